@@ -0,0 +1,59 @@
+/*
+ * This file is distributed as part of the MariaDB Manager. It is free
+ * software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ *
+ * Copyright 2026 SkySQL Corporation Ab
+ *
+ * Author: agent
+ * Date: October 2026
+ */
+
+package com.skysql.java;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates named daemon threads, so that the background work of the library
+ * never keeps the hosting application alive.
+ *
+ * @author agent
+ *
+ */
+public class DaemonThreadFactory implements ThreadFactory {
+	/** The prefix of the thread names. */
+	private final String			m_prefix;
+	/** The number of threads created so far. */
+	private final AtomicInteger		m_count;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param prefix		the prefix of the thread names, e.g. MonAPI-async
+	 */
+	public DaemonThreadFactory(String prefix) {
+		m_prefix = prefix;
+		m_count = new AtomicInteger();
+	}
+
+	/**
+	 * Create a new daemon thread, named prefix-N.
+	 */
+	public Thread newThread(Runnable r) {
+		Thread thread = new Thread(r, m_prefix + "-" + m_count.incrementAndGet());
+		thread.setDaemon(true);
+		return thread;
+	}
+}
@@ -22,14 +22,30 @@
 
 package com.skysql.java;
 
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
-import java.util.Iterator;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
-
-import com.skysql.java.GsonNode.Nodes;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
 /**
  * Handle the latest observations for all the Gson objects.
@@ -37,51 +53,78 @@ import com.skysql.java.GsonNode.Nodes;
  * date when the current instance has last updated them.
  * This is mainly useful to populate the If-Modified-Since
  * header and increase efficiency.
+ * <p>
+ * The class is thread safe, and one instance may be shared by all the monitor
+ * threads. The data of each system, and the list of monitors, are immutable
+ * snapshots: the readers do not lock, and a writer builds the new snapshot of a
+ * system and swaps it atomically, retrying if another writer of the same system
+ * got there first. The writers of different systems do not contend.
+ * The nodes of a system are keyed by their system ID and node ID packed in a
+ * <code>long</code>; the update times are stored as milliseconds since the epoch.
+ * <p>
+ * The objects returned by the getters are built when the data is saved, and
+ * shared by all the callers: reading the cache does not allocate. They must
+ * not be modified.
+ * <p>
+ * The cache may be persisted to a snapshot file, rewritten in the background
+ * after a change and loaded back at startup, see <code>setSnapshotFile</code>.
  * 
  * @author Massimo Siani
  *
  */
 public class GsonLatestObservations {
+	/** The version of the snapshot file format. */
+	private static final int												SNAPSHOT_VERSION = 1;
+	/** The time, in milliseconds, the changes are collected before the snapshot file is rewritten. */
+	private static final long												SNAPSHOT_DELAY = 1000;
+	/**
+	 * The thread that rewrites the snapshot files of all the instances.
+	 */
+	private static final ScheduledExecutorService							SNAPSHOT_WRITER =
+			Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("GsonCache-snapshot"));
 	/**
 	 * The default date to return, if any error occurs.
 	 */
-	private String																m_standardDate;
+	private final String													m_standardDate;
 	/**
-	 * The table of (system ID, system) saved by the current instance.
+	 * The table of (system ID, snapshot of the system and its nodes).
 	 */
-	private LinkedHashMap<Integer, GsonSystem.Systems>							m_system;
+	private final ConcurrentHashMap<Integer, SystemSnapshot>				m_systems;
 	/**
-	 * The table of (system ID, node ID, node) saved by the current instance.
+	 * The snapshot of the monitor classes.
 	 */
-	private LinkedHashMap<Integer, LinkedHashMap<Integer, GsonNode.Nodes>>		m_node;
+	private volatile MonitorSnapshot										m_monitors;
 	/**
-	 * The (monitor ID, monitor classes) table.
+	 * The last time the API has been asked for the monitor classes, in milliseconds since the epoch.
 	 */
-	private LinkedHashMap<Integer, GsonMonitorClasses.MonitorClasses>			m_monitor;
+	private volatile long													m_monitorsChecked;
 	/**
-	 * The (system ID, last system update date) table.
+	 * The table of (system type, node states).
 	 */
-	private LinkedHashMap<Integer, String>										m_systemDates;
+	private final ConcurrentHashMap<String, NodeStatesSnapshot>				m_nodeStates;
 	/**
-	 * The (system ID, node ID, last node update date) table.
+	 * The file the cache is persisted to, null if it is not.
 	 */
-	private LinkedHashMap<Integer, LinkedHashMap<Integer, String>>				m_nodeDates;
+	private volatile File													m_snapshotFile;
 	/**
-	 * The last monitor list update date in rfc 2822 format.
+	 * Serializes the writes of the snapshot file.
 	 */
-	private String																m_monitorDates;
+	private final Object													m_snapshotLock;
+	/**
+	 * True if the cache changed since the snapshot file has been written.
+	 */
+	private final AtomicBoolean												m_dirty;
 
 
 	/**
 	 * Constructor for the class. Initializes the fields.
 	 */
 	public GsonLatestObservations() {
-		m_system = new LinkedHashMap<Integer, GsonSystem.Systems>(3);
-		m_node = new LinkedHashMap<Integer, LinkedHashMap<Integer, GsonNode.Nodes>>(3);
-		m_monitor = new LinkedHashMap<Integer, GsonMonitorClasses.MonitorClasses>(3);
-		m_systemDates = new LinkedHashMap<Integer, String>(3);
-		m_nodeDates = new LinkedHashMap<Integer, LinkedHashMap<Integer,String>>(3);
-		m_monitorDates = null;
+		m_systems = new ConcurrentHashMap<Integer, SystemSnapshot>(4);
+		m_monitors = MonitorSnapshot.EMPTY;
+		m_nodeStates = new ConcurrentHashMap<String, NodeStatesSnapshot>(2);
+		m_snapshotLock = new Object();
+		m_dirty = new AtomicBoolean();
 		m_standardDate = "Thu, 01 Jan 1970 01:00:00 +0100";
 	}
 
@@ -93,12 +136,8 @@ public class GsonLatestObservations {
 	 * @return				the Java object of the requested system, null if it doesn't exist
 	 */
 	public GsonSystem getSystem (int systemID) {
-		try {
-			GsonSystem gsonSystem = new GsonSystem(m_system.get(systemID));
-			return gsonSystem;
-		} catch (Exception e) {
-			return null;
-		}
+		SystemSnapshot snapshot = m_systems.get(systemID);
+		return snapshot == null ? null : snapshot.m_system;
 	}
 
 	/**
@@ -110,12 +149,8 @@ public class GsonLatestObservations {
 	 * @return				the object of the node, or null
 	 */
 	public GsonNode getNode (int systemID, int nodeID) {
-		try {
-			GsonNode gsonNode = new GsonNode(m_node.get(systemID).get(nodeID));
-			return gsonNode;
-		} catch (Exception e) {
-			return null;
-		}
+		NodeEntry entry = nodeEntry(systemID, nodeID);
+		return entry == null ? null : entry.m_node;
 	}
 	
 	/**
@@ -126,17 +161,8 @@ public class GsonLatestObservations {
 	 * @return				the object of the nodes, or null
 	 */
 	public GsonNode getAllNodes (int systemID) {
-		try {
-			LinkedHashMap<Integer, Nodes> hmNodes = m_node.get(systemID);
-			List<GsonNode.Nodes> nodeList = new ArrayList<GsonNode.Nodes>();
-			for (Integer nodeID : hmNodes.keySet()) {
-				nodeList.add(hmNodes.get(nodeID));
-			}
-			GsonNode gsonNode = new GsonNode(nodeList);
-			return gsonNode;
-		} catch (Exception e) {
-			return null;
-		}
+		SystemSnapshot snapshot = m_systems.get(systemID);
+		return snapshot == null ? null : snapshot.m_allNodes;
 	}
 	
 	/**
@@ -147,12 +173,7 @@ public class GsonLatestObservations {
 	 * @return				the object of the monitor, null if not found
 	 */
 	public GsonMonitorClasses getMonitorClasses (int monitorID) {
-		try {
-			GsonMonitorClasses gsonMonitorClasses = new GsonMonitorClasses(m_monitor.get(monitorID));
-			return gsonMonitorClasses;
-		} catch (Exception e) {
-			return null;
-		}
+		return m_monitors.m_monitors.get(monitorID);
 	}
 	
 	/**
@@ -161,16 +182,18 @@ public class GsonLatestObservations {
 	 * @return				the object of the monitor classes, or null
 	 */
 	public GsonMonitorClasses getAllMonitorClasses () {
-		try {
-			List<GsonMonitorClasses.MonitorClasses> monitorList = new ArrayList<GsonMonitorClasses.MonitorClasses>();
-			for (Integer monitorID : m_monitor.keySet()) {
-				monitorList.add(m_monitor.get(monitorID));
-			}
-			GsonMonitorClasses gsonMonitorClasses = new GsonMonitorClasses(monitorList);
-			return gsonMonitorClasses;
-		} catch (Exception e) {
-			return null;
-		}
+		return m_monitors.m_allMonitors;
+	}
+	
+	/**
+	 * Get the object that corresponds to the monitor class with given
+	 * monitor key, if it has been cached. The key is case insensitive.
+	 * 
+	 * @param key			the monitor key
+	 * @return				the object of the monitor, null if not found
+	 */
+	public GsonMonitorClasses getMonitorClassesByKey (String key) {
+		return key == null ? null : m_monitors.m_byKey.get(key);
 	}
 	
 	/**
@@ -182,12 +205,8 @@ public class GsonLatestObservations {
 	 * @return				the date when the system has been updated
 	 */
 	public String getSystemUpdateDate (int systemID) {
-		try {
-			if (! m_systemDates.containsKey(systemID)) throw new RuntimeException();
-			return m_systemDates.get(systemID);
-		} catch (Exception e) {
-			return m_standardDate;
-		}
+		SystemSnapshot snapshot = m_systems.get(systemID);
+		return format(snapshot == null ? 0 : snapshot.m_systemUpdated);
 	}
 	
 	/**
@@ -201,13 +220,37 @@ public class GsonLatestObservations {
 	 * @return				the date of the node last update
 	 */
 	public String getNodeUpdateDate (int systemID, int nodeID) {
-		try {
-			if (! m_nodeDates.containsKey(systemID)) throw new RuntimeException();
-			if (! m_nodeDates.get(systemID).containsKey(nodeID)) throw new RuntimeException();
-			return m_nodeDates.get(systemID).get(nodeID);
-		} catch (Exception e) {
-			return m_standardDate;
+		return format(getNodeUpdateTime(systemID, nodeID));
+	}
+	/**
+	 * Get the last time when a node has been updated by the instance.
+	 * 
+	 * @param systemID		the ID of the system the node belongs to
+	 * @param nodeID		the ID of the node
+	 * @return				the time of the node last update in milliseconds since
+	 * 						the epoch, 0 if unknown
+	 */
+	public long getNodeUpdateTime (int systemID, int nodeID) {
+		NodeEntry entry = nodeEntry(systemID, nodeID);
+		return entry == null ? 0 : entry.m_updated;
+	}
+	/**
+	 * Get the oldest date when one of the nodes of a system has been updated
+	 * by the instance: any change to the nodes of the system is newer. If the system
+	 * has no node, the date corresponding to the zero Unix time is returned.
+	 * 
+	 * @param systemID		the ID of the system
+	 * @return				the date of the least recently updated node
+	 */
+	public String getAllNodesUpdateDate (int systemID) {
+		SystemSnapshot snapshot = m_systems.get(systemID);
+		if (snapshot == null || snapshot.m_allNodes == null) return format(0);
+		long oldest = Long.MAX_VALUE;
+		for (int i=0; i<snapshot.m_nodes.size(); i++) {
+			NodeEntry entry = snapshot.m_nodes.valueAt(i);
+			if (entry.m_node != null && entry.m_updated < oldest) oldest = entry.m_updated;
 		}
+		return format(oldest);
 	}
 	
 	/**
@@ -218,16 +261,22 @@ public class GsonLatestObservations {
 	 * @return				the date when the system has been updated
 	 */
 	public String getMonitorUpdateDate () {
-		String result;
-		try {
-			result = m_monitorDates;
-			if (result == null || result.isEmpty()) {
-				result = m_standardDate;
-			}
-		} catch (Exception e) {
-			result = m_standardDate;
-		}
-		return result;
+		return format(m_monitors.m_updated);
+	}
+	/**
+	 * Get the last time that the API has been asked for the monitor classes,
+	 * whether they changed or not.
+	 * 
+	 * @return				the time in milliseconds since the epoch, 0 if never
+	 */
+	public long getMonitorCheckTime () {
+		return m_monitorsChecked;
+	}
+	/**
+	 * Record that the API has just been asked for the monitor classes.
+	 */
+	public void setMonitorChecked () {
+		m_monitorsChecked = System.currentTimeMillis();
 	}
 
 	/**
@@ -237,19 +286,21 @@ public class GsonLatestObservations {
 	 * @param systemObj		the object to save
 	 */
 	public void setLastSystem (GsonSystem systemObj) {
-		try {
-			SimpleDateFormat sdf = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss Z");
-			String now = sdf.format(new Date());
-			Iterator<GsonSystem.Systems> it = systemObj.getSystems().iterator();
-			while (it.hasNext()) {
-				GsonSystem.Systems systemTmp = it.next();
-				int systemID = systemTmp.getSystemId();
-				m_system.put(systemID, systemTmp);
-				m_systemDates.put(systemID, now);
+		if (systemObj == null || systemObj.getSystems() == null) return;
+		long now = System.currentTimeMillis();
+		for (GsonSystem.Systems system : systemObj.getSystems()) {
+			int systemID;
+			try {
+				systemID = system.getSystemId();
+			} catch (NumberFormatException nfex) {
+				continue;
 			}
-		} catch (Exception e) {
-			// IGNORE
+			SystemSnapshot current;
+			do {
+				current = m_systems.get(systemID);
+			} while (! swap(systemID, current, snapshot(current).withSystem(system, now)));
 		}
+		persist();
 	}
 
 	/**
@@ -259,28 +310,49 @@ public class GsonLatestObservations {
 	 * @param nodeObj		the object to save
 	 */
 	public void setLastNode (GsonNode nodeObj) {
-		try {
-			SimpleDateFormat sdf = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss Z");
-			String now = sdf.format(new Date());
-			Iterator<GsonNode.Nodes> it = nodeObj.getNodes().iterator();
-			while (it.hasNext()) {
-				GsonNode.Nodes nodeTmp = it.next();
-				int systemID = nodeTmp.getSystemId();
-				int nodeID = nodeTmp.getNodeId();
-				LinkedHashMap<Integer, GsonNode.Nodes> lhm = new LinkedHashMap<Integer, GsonNode.Nodes>(1);
-				if (m_node != null && m_node.containsKey(systemID))
-					lhm = m_node.get(systemID);
-				lhm.put(nodeID, nodeTmp);
-				m_node.put(systemID, lhm);
-				LinkedHashMap<Integer, String> lhmDate = new LinkedHashMap<Integer, String>(1);
-				if (m_nodeDates != null && m_nodeDates.containsKey(systemID))
-					lhmDate = m_nodeDates.get(systemID);
-				lhmDate.put(nodeID, now);
-				m_nodeDates.put(systemID, lhmDate);
-			}
-		} catch (Exception e) {
-			// IGNORE
+		if (nodeObj == null || nodeObj.getNodes() == null) return;
+		long now = System.currentTimeMillis();
+		for (Map.Entry<Integer, List<GsonNode.Nodes>> system : bySystem(nodeObj.getNodes()).entrySet()) {
+			int systemID = system.getKey();
+			SystemSnapshot current;
+			LongObjectMap.Builder<NodeEntry> table;
+			do {
+				current = m_systems.get(systemID);
+				table = snapshot(current).m_nodes.builder();
+				for (GsonNode.Nodes node : system.getValue()) {
+					table.put(LongObjectMap.pack(systemID, node.getNodeId()), new NodeEntry(node, now));
+				}
+			} while (! swap(systemID, current, snapshot(current).withNodes(table.build())));
 		}
+		persist();
+	}
+	
+	/**
+	 * Replace all the cached nodes of a system at once: the readers see either
+	 * the old nodes or the new ones, never an empty or a partial list.
+	 * The nodes are saved with the current date.
+	 * 
+	 * @param systemID	the system ID
+	 * @param nodes		the nodes of the system
+	 */
+	public void setAllNodes(int systemID, List<GsonNode.Nodes> nodes) {
+		long now = System.currentTimeMillis();
+		SystemSnapshot current;
+		LongObjectMap.Builder<NodeEntry> table;
+		do {
+			current = m_systems.get(systemID);
+			table = snapshot(current).m_nodes.builder();
+			// the nodes not in the list are dropped, their update dates are kept
+			for (int i=0; i<table.size(); i++) {
+				if (table.valueAt(i).m_node != null) {
+					table.setValueAt(i, new NodeEntry(null, table.valueAt(i).m_updated));
+				}
+			}
+			for (GsonNode.Nodes node : nodes) {
+				table.put(LongObjectMap.pack(systemID, node.getNodeId()), new NodeEntry(node, now));
+			}
+		} while (! swap(systemID, current, snapshot(current).withNodes(table.build())));
+		persist();
 	}
 	
 	/**
@@ -289,12 +361,7 @@ public class GsonLatestObservations {
 	 * @param systemID	the system ID
 	 */
 	public void clearAllNodes(int systemID) {
-		try {
-			m_node.get(systemID).clear();
-			m_node.remove(systemID);
-		} catch (Exception e) {
-			// IGNORE
-		}
+		setAllNodes(systemID, Collections.<GsonNode.Nodes>emptyList());
 	}
 
 	/**
@@ -304,19 +371,501 @@ public class GsonLatestObservations {
 	 * @param monitorObj		the monitor class object
 	 */
 	public void setLastMonitor (GsonMonitorClasses monitorObj) {
+		if (monitorObj == null || monitorObj.getMonitorClasses() == null) return;
+		LongObjectMap.Builder<GsonMonitorClasses> monitors = LongObjectMap.<GsonMonitorClasses>empty().builder();
+		for (GsonMonitorClasses.MonitorClasses monitor : monitorObj.getMonitorClasses()) {
+			monitors.put(monitor.getMonitorId(), new GsonMonitorClasses(monitor));
+		}
+		m_monitors = new MonitorSnapshot(monitors.build(), System.currentTimeMillis());
+		persist();
+	}
+	
+	/**
+	 * Get the index of the node states of a system type.
+	 * 
+	 * @param systemType	the system type
+	 * @return				the index, null if not saved
+	 */
+	public GsonNodeStates.Index getNodeStates (String systemType) {
+		NodeStatesSnapshot snapshot = m_nodeStates.get(systemType);
+		return snapshot == null ? null : snapshot.m_index;
+	}
+	/**
+	 * Get the last time that the node states of a system type have been updated by
+	 * this instance. If they have not been saved yet, the date corresponding to the
+	 * zero Unix time is returned.
+	 * 
+	 * @param systemType	the system type
+	 * @return				the date when the node states have been updated
+	 */
+	public String getNodeStatesUpdateDate (String systemType) {
+		NodeStatesSnapshot snapshot = m_nodeStates.get(systemType);
+		return format(snapshot == null ? 0 : snapshot.m_updated);
+	}
+	/**
+	 * Get the last time that the node states of a system type have been checked
+	 * against the API, whether or not they had changed.
+	 * 
+	 * @param systemType	the system type
+	 * @return				the time in milliseconds since the epoch, 0 if never
+	 */
+	public long getNodeStatesCheckTime (String systemType) {
+		NodeStatesSnapshot snapshot = m_nodeStates.get(systemType);
+		return snapshot == null ? 0 : snapshot.m_checked;
+	}
+	/**
+	 * Save the node states of a system type, with the current date.
+	 * 
+	 * @param systemType	the system type
+	 * @param nodeStates	the node states object
+	 */
+	public void setNodeStates (String systemType, GsonNodeStates nodeStates) {
+		if (nodeStates == null || nodeStates.getNodeStates() == null) return;
+		long now = System.currentTimeMillis();
+		m_nodeStates.put(systemType, new NodeStatesSnapshot(new GsonNodeStates.Index(nodeStates.getNodeStates()), now, now));
+		persist();
+	}
+	/**
+	 * Record that the node states of a system type have been checked against the
+	 * API, and found unchanged or not available.
+	 * 
+	 * @param systemType	the system type
+	 */
+	public void setNodeStatesChecked (String systemType) {
+		NodeStatesSnapshot current;
+		do {
+			current = m_nodeStates.get(systemType);
+			if (current == null) return;
+		} while (! m_nodeStates.replace(systemType, current,
+				new NodeStatesSnapshot(current.m_index, current.m_updated, System.currentTimeMillis())));
+	}
+	
+	/**
+	 * Persist the cache to a file: the current content of the file, if any,
+	 * is loaded in place of the cache, and the file is rewritten in the background
+	 * after the cache changes, once for all the changes made within one second.
+	 * The update dates are persisted too, so that the first requests after a restart
+	 * only ask the API for the changes. The changes not written yet are lost if the
+	 * process stops, unless <code>flushSnapshot</code> is called: the API is then
+	 * asked for them again.
+	 * 
+	 * @param file		the snapshot file, null to stop persisting the cache
+	 * @return			true if the cache has been loaded from the file
+	 */
+	public boolean setSnapshotFile(File file) {
+		m_snapshotFile = file;
+		return file != null && file.exists() && loadSnapshot(file);
+	}
+	/**
+	 * Write the pending changes to the snapshot file now, e.g. before shutting down.
+	 * 
+	 * @return			true if the cache had changed and has been written
+	 */
+	public boolean flushSnapshot() {
+		File file = m_snapshotFile;
+		return file != null && m_dirty.getAndSet(false) && saveSnapshot(file);
+	}
+	/**
+	 * Write the cache to a snapshot file. The file is replaced atomically,
+	 * where the file system allows it.
+	 * 
+	 * @param file		the snapshot file
+	 * @return			true if the cache has been written
+	 */
+	public boolean saveSnapshot(File file) {
+		synchronized (m_snapshotLock) {
+			MonitorSnapshot monitors = m_monitors;
+			Snapshot snapshot = new Snapshot();
+			for (SystemSnapshot system : m_systems.values()) {
+				if (system.m_system != null) {
+					snapshot.systems.add(new SnapshotSystem(system.m_system.getSystem(0), system.m_systemUpdated));
+				}
+				for (int n=0; n<system.m_nodes.size(); n++) {
+					long key = system.m_nodes.keyAt(n);
+					NodeEntry entry = system.m_nodes.valueAt(n);
+					snapshot.nodes.add(new SnapshotNode((int) (key >> 32), (int) key,
+							entry.m_node == null ? null : entry.m_node.getNode(0), entry.m_updated));
+				}
+			}
+			for (int i=0; i<monitors.m_monitors.size(); i++) {
+				snapshot.monitors.add(monitors.m_monitors.valueAt(i).getMonitorClass(0));
+			}
+			snapshot.monitorsUpdated = monitors.m_updated;
+			for (Map.Entry<String, NodeStatesSnapshot> nodeStates : m_nodeStates.entrySet()) {
+				snapshot.nodeStates.add(new SnapshotNodeStates(nodeStates.getKey(), nodeStates.getValue()));
+			}
+			File temporary = new File(file.getPath() + ".tmp");
+			Writer out = null;
+			try {
+				out = new OutputStreamWriter(new GZIPOutputStream(new FileOutputStream(temporary)), "UTF-8");
+				out.write(GsonManager.toJson(snapshot));
+				out.close();
+				out = null;
+				if (! temporary.renameTo(file)) {
+					file.delete();
+					if (! temporary.renameTo(file)) throw new IOException("cannot rename " + temporary);
+				}
+				return true;
+			} catch (IOException e) {
+				Logging.error("Cannot write the cache snapshot " + file + ": " + e.getMessage());
+				return false;
+			} finally {
+				if (out != null) {
+					try {
+						out.close();
+					} catch (IOException e) {
+						// IGNORE
+					}
+					temporary.delete();
+				}
+			}
+		}
+	}
+	/**
+	 * Replace the cache with the content of a snapshot file.
+	 * 
+	 * @param file		the snapshot file
+	 * @return			true if the cache has been loaded
+	 */
+	public boolean loadSnapshot(File file) {
+		Snapshot snapshot;
+		BufferedReader in = null;
 		try {
-			SimpleDateFormat sdf = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss Z");
-			String now = sdf.format(new Date());
-			Iterator<GsonMonitorClasses.MonitorClasses> it = monitorObj.getMonitorClasses().iterator();
-			m_monitor.clear();
-			while (it.hasNext()) {
-				GsonMonitorClasses.MonitorClasses monitorTmp = it.next();
-				Integer monitorID = monitorTmp.getMonitorId();
-				m_monitor.put(monitorID, monitorTmp);
+			in = new BufferedReader(new InputStreamReader(new GZIPInputStream(new FileInputStream(file)), "UTF-8"));
+			snapshot = GsonManager.fromJson(in, Snapshot.class);
+		} catch (IOException e) {
+			snapshot = null;
+		} finally {
+			if (in != null) {
+				try {
+					in.close();
+				} catch (IOException e) {
+					// IGNORE
+				}
+			}
+		}
+		if (snapshot == null || snapshot.version != SNAPSHOT_VERSION) {
+			Logging.error("Cannot read the cache snapshot " + file);
+			return false;
+		}
+		Map<Integer, SystemSnapshot> directory = new HashMap<Integer, SystemSnapshot>();
+		for (SnapshotSystem system : snapshot.systems) {
+			if (system.system == null) continue;
+			directory.put(system.systemid, SystemSnapshot.EMPTY.withSystem(system.system, system.updated));
+		}
+		Map<Integer, LongObjectMap.Builder<NodeEntry>> tables = new HashMap<Integer, LongObjectMap.Builder<NodeEntry>>();
+		for (SnapshotNode node : snapshot.nodes) {
+			LongObjectMap.Builder<NodeEntry> table = tables.get(node.systemid);
+			if (table == null) {
+				table = LongObjectMap.<NodeEntry>empty().builder();
+				tables.put(node.systemid, table);
+			}
+			table.put(LongObjectMap.pack(node.systemid, node.nodeid), new NodeEntry(node.node, node.updated));
+		}
+		for (Map.Entry<Integer, LongObjectMap.Builder<NodeEntry>> table : tables.entrySet()) {
+			directory.put(table.getKey(), snapshot(directory.get(table.getKey())).withNodes(table.getValue().build()));
+		}
+		LongObjectMap.Builder<GsonMonitorClasses> monitors = LongObjectMap.<GsonMonitorClasses>empty().builder();
+		for (GsonMonitorClasses.MonitorClasses monitor : snapshot.monitors) {
+			monitors.put(monitor.getMonitorId(), new GsonMonitorClasses(monitor));
+		}
+		m_systems.putAll(directory);
+		m_systems.keySet().retainAll(directory.keySet());
+		m_monitors = new MonitorSnapshot(monitors.build(), snapshot.monitorsUpdated);
+		m_nodeStates.clear();
+		for (SnapshotNodeStates nodeStates : snapshot.nodeStates) {
+			if (nodeStates.systemtype == null || nodeStates.states == null) continue;
+			// checked long ago: the first lookup revalidates them
+			m_nodeStates.put(nodeStates.systemtype,
+					new NodeStatesSnapshot(new GsonNodeStates.Index(nodeStates.states), nodeStates.updated, 0));
+		}
+		return true;
+	}
+	/**
+	 * Schedule the rewrite of the snapshot file, if any, after a change.
+	 * The changes made until the rewrite starts are written together.
+	 */
+	private void persist() {
+		if (m_snapshotFile == null || ! m_dirty.compareAndSet(false, true)) return;
+		try {
+			SNAPSHOT_WRITER.schedule(new Runnable() {
+				public void run() {
+					flushSnapshot();
+				}
+			}, SNAPSHOT_DELAY, TimeUnit.MILLISECONDS);
+		} catch (RejectedExecutionException e) {
+			// IGNORE: shutting down
+		}
+	}
+	
+	private NodeEntry nodeEntry(int systemID, int nodeID) {
+		SystemSnapshot snapshot = m_systems.get(systemID);
+		return snapshot == null ? null : snapshot.m_nodes.get(LongObjectMap.pack(systemID, nodeID));
+	}
+	/**
+	 * @param time		milliseconds since the epoch, 0 if unknown
+	 * @return			the date in rfc 2822 format
+	 */
+	private String format(long time) {
+		if (time == 0) return m_standardDate;
+		SimpleDateFormat sdf = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss Z");
+		return sdf.format(new Date(time));
+	}
+	private static SystemSnapshot snapshot(SystemSnapshot current) {
+		return current == null ? SystemSnapshot.EMPTY : current;
+	}
+	/**
+	 * Install a new snapshot of a system, if the current one has not changed meanwhile.
+	 * 
+	 * @return true if the snapshot has been installed
+	 */
+	private boolean swap(Integer systemID, SystemSnapshot current, SystemSnapshot next) {
+		if (current == null) return m_systems.putIfAbsent(systemID, next) == null;
+		return m_systems.replace(systemID, current, next);
+	}
+	private static Map<Integer, List<GsonNode.Nodes>> bySystem(List<GsonNode.Nodes> nodes) {
+		Map<Integer, List<GsonNode.Nodes>> bySystem = new LinkedHashMap<Integer, List<GsonNode.Nodes>>(2);
+		for (GsonNode.Nodes node : nodes) {
+			List<GsonNode.Nodes> list = bySystem.get(node.getSystemId());
+			if (list == null) {
+				list = new ArrayList<GsonNode.Nodes>();
+				bySystem.put(node.getSystemId(), list);
+			}
+			list.add(node);
+		}
+		return bySystem;
+	}
+	
+	/**
+	 * The immutable state of a system: the system object, its nodes and
+	 * the times when this instance updated them.
+	 * 
+	 * @author agent
+	 *
+	 */
+	private static final class SystemSnapshot {
+		private static final SystemSnapshot EMPTY = new SystemSnapshot(null, 0, LongObjectMap.<NodeEntry>empty(), null);
+		/** The system, null if not saved. */
+		private final GsonSystem					m_system;
+		private final long							m_systemUpdated;
+		/** The ((system ID, node ID), node) table. */
+		private final LongObjectMap<NodeEntry>		m_nodes;
+		/** All the nodes, null if there is none. */
+		private final GsonNode						m_allNodes;
+		
+		private SystemSnapshot(GsonSystem system, long systemUpdated, LongObjectMap<NodeEntry> nodes,
+				GsonNode allNodes) {
+			m_system = system;
+			m_systemUpdated = systemUpdated;
+			m_nodes = nodes;
+			m_allNodes = allNodes;
+		}
+		
+		private SystemSnapshot withSystem(GsonSystem.Systems system, long updated) {
+			return new SystemSnapshot(new GsonSystem(system), updated, m_nodes, m_allNodes);
+		}
+		private SystemSnapshot withNodes(LongObjectMap<NodeEntry> nodes) {
+			List<GsonNode.Nodes> allNodes = new ArrayList<GsonNode.Nodes>(nodes.size());
+			for (int i=0; i<nodes.size(); i++) {
+				if (nodes.valueAt(i).m_node != null) allNodes.add(nodes.valueAt(i).m_node.getNode(0));
+			}
+			return new SystemSnapshot(m_system, m_systemUpdated, nodes,
+					allNodes.isEmpty() ? null : new GsonNode(Collections.unmodifiableList(allNodes)));
+		}
+	}
+	
+	/**
+	 * A cached node and when this instance saved it. The node is null if it has
+	 * been removed, and only the time is left.
+	 * 
+	 * @author agent
+	 *
+	 */
+	private static final class NodeEntry {
+		private final GsonNode				m_node;
+		private final long					m_updated;
+		
+		private NodeEntry(GsonNode.Nodes node, long updated) {
+			m_node = node == null ? null : new GsonNode(node);
+			m_updated = updated;
+		}
+	}
+	
+	/**
+	 * The content of the snapshot file.
+	 * 
+	 * @author agent
+	 *
+	 */
+	private static final class Snapshot {
+		private int										version = SNAPSHOT_VERSION;
+		private List<SnapshotSystem>					systems = new ArrayList<SnapshotSystem>();
+		private List<SnapshotNode>						nodes = new ArrayList<SnapshotNode>();
+		private List<GsonMonitorClasses.MonitorClasses>	monitors = new ArrayList<GsonMonitorClasses.MonitorClasses>();
+		private long									monitorsUpdated;
+		private List<SnapshotNodeStates>				nodeStates = new ArrayList<SnapshotNodeStates>();
+	}
+	/**
+	 * A system in the snapshot file.
+	 * 
+	 * @author agent
+	 *
+	 */
+	private static final class SnapshotSystem {
+		private int								systemid;
+		private long							updated;
+		private GsonSystem.Systems				system;
+		
+		private SnapshotSystem(GsonSystem.Systems system, long updated) {
+			this.systemid = system.getSystemId();
+			this.updated = updated;
+			this.system = system;
+		}
+	}
+	/**
+	 * A node in the snapshot file. The node is null if only the update time is left.
+	 * 
+	 * @author agent
+	 *
+	 */
+	private static final class SnapshotNode {
+		private int								systemid;
+		private int								nodeid;
+		private long							updated;
+		private GsonNode.Nodes					node;
+		
+		private SnapshotNode(int systemid, int nodeid, GsonNode.Nodes node, long updated) {
+			this.systemid = systemid;
+			this.nodeid = nodeid;
+			this.updated = updated;
+			this.node = node;
+		}
+	}
+	
+	/**
+	 * The node states of a system type in the snapshot file.
+	 * 
+	 * @author agent
+	 *
+	 */
+	private static final class SnapshotNodeStates {
+		private String								systemtype;
+		private long								updated;
+		private List<GsonNodeStates.NodeStates>		states;
+		
+		private SnapshotNodeStates(String systemtype, NodeStatesSnapshot nodeStates) {
+			this.systemtype = systemtype;
+			this.updated = nodeStates.m_updated;
+			this.states = nodeStates.m_index.getNodeStates();
+		}
+	}
+	
+	/**
+	 * The node states of a system type, when this instance saved them and
+	 * when it last checked them against the API.
+	 * 
+	 * @author agent
+	 *
+	 */
+	private static final class NodeStatesSnapshot {
+		private final GsonNodeStates.Index		m_index;
+		private final long						m_updated;
+		private final long						m_checked;
+		
+		private NodeStatesSnapshot(GsonNodeStates.Index index, long updated, long checked) {
+			m_index = index;
+			m_updated = updated;
+			m_checked = checked;
+		}
+	}
+	
+	/**
+	 * The immutable list of monitor classes, and when this instance saved it.
+	 * 
+	 * @author agent
+	 *
+	 */
+	private static final class MonitorSnapshot {
+		private static final MonitorSnapshot EMPTY = new MonitorSnapshot(LongObjectMap.<GsonMonitorClasses>empty(), 0);
+		/** The (monitor ID, monitor class) table. */
+		private final LongObjectMap<GsonMonitorClasses>		m_monitors;
+		/** All the monitor classes. */
+		private final GsonMonitorClasses					m_allMonitors;
+		/** The (monitor key, monitor class) index. */
+		private final KeyIndex<GsonMonitorClasses>			m_byKey;
+		/** The last monitor list update time, in milliseconds since the epoch. */
+		private final long									m_updated;
+		
+		private MonitorSnapshot(LongObjectMap<GsonMonitorClasses> monitors, long updated) {
+			List<GsonMonitorClasses.MonitorClasses> allMonitors =
+					new ArrayList<GsonMonitorClasses.MonitorClasses>(monitors.size());
+			m_byKey = new KeyIndex<GsonMonitorClasses>(monitors.size());
+			for (int i=0; i<monitors.size(); i++) {
+				allMonitors.add(monitors.valueAt(i).getMonitorClass(0));
+				m_byKey.putIfAbsent(monitors.valueAt(i).getMonitorClass(0).getMonitor(), monitors.valueAt(i));
+			}
+			m_monitors = monitors;
+			m_allMonitors = new GsonMonitorClasses(Collections.unmodifiableList(allMonitors));
+			m_updated = updated;
+		}
+	}
+	
+	/**
+	 * A case insensitive index from string keys to values, filled once and then
+	 * only read. The lookups are done in place with <code>equalsIgnoreCase</code>,
+	 * without case folding the key into a new string.
+	 * 
+	 * @author agent
+	 *
+	 * @param <V>	the type of the values
+	 */
+	private static final class KeyIndex<V> {
+		private final String[]		m_keys;
+		private final Object[]		m_values;
+		
+		private KeyIndex(int size) {
+			int capacity = 2;
+			while (capacity < size * 2) {
+				capacity <<= 1;
+			}
+			m_keys = new String[capacity];
+			m_values = new Object[capacity];
+		}
+		
+		/**
+		 * Add a key, unless an equal key, ignoring the case, is already there.
+		 */
+		private void putIfAbsent(String key, V value) {
+			if (key == null) return;
+			int mask = m_keys.length - 1;
+			int slot = hash(key) & mask;
+			while (m_keys[slot] != null) {
+				if (m_keys[slot].equalsIgnoreCase(key)) return;
+				slot = (slot + 1) & mask;
+			}
+			m_keys[slot] = key;
+			m_values[slot] = value;
+		}
+		@SuppressWarnings("unchecked")
+		private V get(String key) {
+			int mask = m_keys.length - 1;
+			int slot = hash(key) & mask;
+			while (m_keys[slot] != null) {
+				if (m_keys[slot].equalsIgnoreCase(key)) return (V) m_values[slot];
+				slot = (slot + 1) & mask;
+			}
+			return null;
+		}
+		/**
+		 * A hash that is equal for the keys that are equal ignoring the case,
+		 * folding the characters as <code>equalsIgnoreCase</code> does.
+		 */
+		private static int hash(String key) {
+			int h = 0;
+			for (int i=0; i<key.length(); i++) {
+				h = 31 * h + Character.toLowerCase(Character.toUpperCase(key.charAt(i)));
 			}
-			m_monitorDates = now;
-		} catch (Exception e) {
-			// IGNORE
+			return h ^ (h >>> 16);
 		}
 	}
 	
@@ -22,7 +22,22 @@
 
 package com.skysql.java;
 
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
 import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
 
 /**
  * Class to manage JSON strings, from and to Java objects.
@@ -37,10 +52,32 @@ import com.google.gson.Gson;
  */
 public class GsonManager {
 
+	/**
+	 * The streaming adapters of the largest API entities, which are read
+	 * and written without reflection.
+	 */
+	private static final TypeAdapterFactory	MODEL_ADAPTERS = new TypeAdapterFactory() {
+		@SuppressWarnings("unchecked")
+		public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> type) {
+			Class<? super T> rawType = type.getRawType();
+			if (rawType == GsonNode.Nodes.class) {
+				return (TypeAdapter<T>) new GsonNode.NodesAdapter(gson);
+			} else if (rawType == GsonSystem.Systems.class) {
+				return (TypeAdapter<T>) new GsonSystem.SystemsAdapter(gson);
+			} else if (rawType == GsonMonitorClasses.MonitorClasses.class) {
+				return (TypeAdapter<T>) new GsonMonitorClasses.MonitorClassesAdapter();
+			} else if (rawType == GsonMonitorData.MonitorData.class) {
+				return (TypeAdapter<T>) new GsonMonitorData.MonitorDataAdapter();
+			} else if (rawType == GsonMonitorSeries.MonitorSeries.class) {
+				return (TypeAdapter<T>) new GsonMonitorSeries.MonitorSeriesAdapter();
+			}
+			return null;
+		}
+	};
 	/**
 	 * Gson object.
 	 */
-	private static Gson			gson = new Gson();
+	private static Gson			gson = new GsonBuilder().registerTypeAdapterFactory(MODEL_ADAPTERS).create();
 
 	/**
 	 * Generate a JSON from an object.
@@ -58,6 +95,8 @@ public class GsonManager {
 	 * from <code>GsonErrors</code> and the object contains errors, this method
 	 * prints the error and/or warning messages as defined in the
 	 * <code>Logging.error</code> and <code>Logging.warn</code>. 
+	 * The JSON is parsed once: the errors and warnings are read together
+	 * with the object, which inherits them.
 	 * 
 	 * @param inJson the JSON as a string.
 	 * @param objClass the class of the object.
@@ -65,35 +104,164 @@ public class GsonManager {
 	 */
 	public static <T> T fromJson(final String inJson, Class<T> objClass) {
 		try {
-			boolean errorFound = false;
+			T resultObj = gson.fromJson(inJson, objClass);
 			// if API returned errors or warnings
+			if (resultObj instanceof GsonErrors && logErrors((GsonErrors) resultObj)) {
+				return null;
+			}
+			return resultObj;
+		} catch (JsonParseException e) {
+			// an error message that does not fit the class: parse it again, only to report it
 			if (GsonErrors.class.isAssignableFrom(objClass)) {
-				GsonErrors gsonErrors = gson.fromJson(inJson, GsonErrors.class);
-				if (gsonErrors != null) {
-					// print errors
-					if (gsonErrors.getErrors() != null) {
-						errorFound = true;
-						Logging.error("The API returned the following error(s): ");
-						for (String error : gsonErrors.getErrors()) {
-							Logging.error(error);
-						}
-					}
-					// print warnings
-					if (gsonErrors.getWarnings() != null) {
-						errorFound = true;
-						Logging.warn("The API returned the following warning(s): ");
-						for (String warning : gsonErrors.getWarnings()) {
-							Logging.warn(warning);
-						}
-					}
-					if (errorFound) return null;
+				try {
+					logErrors(gson.fromJson(inJson, GsonErrors.class));
+				} catch (Exception ex) {
+					// IGNORE
 				}
 			}
-			T resultObj = gson.fromJson(inJson, objClass);
+			return null;
+		} catch (Exception e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Convert a JSON read from a stream into a Java object, without reading
+	 * the whole JSON into memory first. The stream is not closed.
+	 * If the Object class is derived from <code>GsonErrors</code> and the
+	 * object contains errors, the error and/or warning messages are printed as in
+	 * <code>fromJson(String, Class)</code> and null is returned.
+	 * 
+	 * @param in the JSON as a stream of characters.
+	 * @param objClass the class of the object.
+	 * @return the deserialized JSON as a Java object, null on errors.
+	 */
+	public static <T> T fromJson(final Reader in, Class<T> objClass) {
+		try {
+			T resultObj = gson.fromJson(in, objClass);
+			// the errors and warnings are read with the object, which inherits them
+			if (resultObj instanceof GsonErrors && logErrors((GsonErrors) resultObj)) {
+				return null;
+			}
 			return resultObj;
 		} catch (Exception e) {
+			Logging.error("Cannot decode the API response: " + e.getMessage());
 			return null;
 		}
 	}
 
+	/**
+	 * Print the errors and warnings returned by the API, if any.
+	 * 
+	 * @param gsonErrors the errors and warnings, may be null.
+	 * @return true if there is any error or warning.
+	 */
+	private static boolean logErrors(GsonErrors gsonErrors) {
+		if (gsonErrors == null) return false;
+		boolean errorFound = false;
+		// print errors
+		if (gsonErrors.getErrors() != null) {
+			errorFound = true;
+			Logging.error("The API returned the following error(s): ");
+			for (String error : gsonErrors.getErrors()) {
+				Logging.error(error);
+			}
+		}
+		// print warnings
+		if (gsonErrors.getWarnings() != null) {
+			errorFound = true;
+			Logging.warn("The API returned the following warning(s): ");
+			for (String warning : gsonErrors.getWarnings()) {
+				Logging.warn(warning);
+			}
+		}
+		return errorFound;
+	}
+
+	/**
+	 * Build the table used by the streaming adapters to look up the fields by name.
+	 * 
+	 * @param names the JSON field names.
+	 * @return the (name, position in the list) table.
+	 */
+	static Map<String, Integer> fieldIndex(String... names) {
+		Map<String, Integer> index = new HashMap<String, Integer>(names.length * 2);
+		for (int i=0; i<names.length; i++) {
+			index.put(names[i], i);
+		}
+		return index;
+	}
+	/**
+	 * Parse an integer field of the API.
+	 * 
+	 * @param value the field value, may be null.
+	 * @param errorValue the value returned if the field is not a number.
+	 * @return the number, or <code>errorValue</code>.
+	 */
+	static int parseInt(String value, int errorValue) {
+		if (value == null) return errorValue;
+		try {
+			return Integer.parseInt(value);
+		} catch (NumberFormatException nfex) {
+			return errorValue;
+		}
+	}
+	/**
+	 * Read a string value as the reflective Gson adapter does: numbers and
+	 * booleans are converted to strings.
+	 * 
+	 * @param in the JSON reader.
+	 * @return the string, may be null.
+	 * @throws IOException
+	 */
+	static String readString(JsonReader in) throws IOException {
+		JsonToken token = in.peek();
+		if (token == JsonToken.NULL) {
+			in.nextNull();
+			return null;
+		}
+		if (token == JsonToken.BOOLEAN) {
+			return Boolean.toString(in.nextBoolean());
+		}
+		return in.nextString();
+	}
+	/**
+	 * Read an array of strings.
+	 * 
+	 * @param in the JSON reader.
+	 * @return the list, may be null.
+	 * @throws IOException
+	 */
+	static List<String> readStringList(JsonReader in) throws IOException {
+		if (in.peek() == JsonToken.NULL) {
+			in.nextNull();
+			return null;
+		}
+		List<String> list = new ArrayList<String>();
+		in.beginArray();
+		while (in.hasNext()) {
+			list.add(readString(in));
+		}
+		in.endArray();
+		return list;
+	}
+	/**
+	 * Write a list of strings as an array.
+	 * 
+	 * @param out the JSON writer.
+	 * @param list the list, may be null.
+	 * @throws IOException
+	 */
+	static void writeStringList(JsonWriter out, List<String> list) throws IOException {
+		if (list == null) {
+			out.nullValue();
+			return;
+		}
+		out.beginArray();
+		for (String element : list) {
+			out.value(element);
+		}
+		out.endArray();
+	}
+
 }
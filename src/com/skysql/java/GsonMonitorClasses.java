@@ -22,9 +22,16 @@
 
 package com.skysql.java;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
 
 /**
  * Contains the fields for the "monitorclass" API call.
@@ -34,6 +41,8 @@ import java.util.List;
  */
 public class GsonMonitorClasses extends GsonErrors {
 	private final static int ERROR_INT_RETURN = -1;
+	/** Marks a numeric field not parsed yet. */
+	private final static int UNPARSED = Integer.MIN_VALUE;
 	private MonitorClasses monitorclass;
 	private List<MonitorClasses> monitorclasses;
 
@@ -67,8 +76,9 @@ public class GsonMonitorClasses extends GsonErrors {
 	 */
 	public MonitorClasses getMonitorClass(int index) {
 		if (index < 0) return null;
-		if (getMonitorClasses() == null || getMonitorClasses().size() < index+1) return null;
-		return getMonitorClasses().get(index);
+		if (monitorclasses == null) return index == 0 ? monitorclass : null;
+		if (monitorclasses.size() < index+1) return null;
+		return monitorclasses.get(index);
 	}
 	/**
 	 * Gets the list of cached monitor classes. If a list exists, called monitorclasses, it is returned.
@@ -100,6 +110,22 @@ public class GsonMonitorClasses extends GsonErrors {
 		private String interval;
 		private String unit;
 		private String monitorid;
+		/** The numeric fields, parsed once. */
+		private transient int deltaValue = UNPARSED;
+		private transient int systemaverageValue = UNPARSED;
+		private transient int intervalValue = UNPARSED;
+		private transient int monitoridValue = UNPARSED;
+
+		/**
+		 * Parse the numeric fields. Called when the object is decoded; the getters
+		 * also call it for the objects that were built otherwise.
+		 */
+		private void parseNumbers() {
+			deltaValue = GsonManager.parseInt(delta, ERROR_INT_RETURN);
+			systemaverageValue = GsonManager.parseInt(systemaverage, ERROR_INT_RETURN);
+			intervalValue = GsonManager.parseInt(interval, ERROR_INT_RETURN);
+			monitoridValue = GsonManager.parseInt(monitorid, ERROR_INT_RETURN);
+		}
 		
 		/**
 		 * @return the systemtype field of the JSON
@@ -154,11 +180,8 @@ public class GsonMonitorClasses extends GsonErrors {
 		 * or <code>-1</code>
 		 */
 		public int getDelta() {
-			try {
-				return Integer.parseInt(delta);
-			} catch (NumberFormatException nfex) {
-				return ERROR_INT_RETURN;
-			}
+			if (deltaValue == UNPARSED) parseNumbers();
+			return deltaValue;
 		}
 		/**
 		 * @return the monitortype field of the JSON
@@ -171,22 +194,16 @@ public class GsonMonitorClasses extends GsonErrors {
 		 * or <code>-1</code>
 		 */
 		public int getSystemAverage() {
-			try {
-				return Integer.parseInt(systemaverage);
-			} catch (NumberFormatException nfex) {
-				return ERROR_INT_RETURN;
-			}
+			if (systemaverageValue == UNPARSED) parseNumbers();
+			return systemaverageValue;
 		}
 		/**
 		 * @return the interval field of the JSON, if it can be parsed as an integer value,
 		 * or <code>-1</code>
 		 */
 		public int getInterval() {
-			try {
-				return Integer.parseInt(interval);
-			} catch (NumberFormatException nfex) {
-				return ERROR_INT_RETURN;
-			}
+			if (intervalValue == UNPARSED) parseNumbers();
+			return intervalValue;
 		}
 		/**
 		 * @return the unit field of the JSON
@@ -199,11 +216,8 @@ public class GsonMonitorClasses extends GsonErrors {
 		 * or <code>-1</code>
 		 */
 		public int getMonitorId() {
-			try {
-				return Integer.parseInt(monitorid);
-			} catch (NumberFormatException nfex) {
-				return ERROR_INT_RETURN;
-			}
+			if (monitoridValue == UNPARSED) parseNumbers();
+			return monitoridValue;
 		}
 	}
 	
@@ -212,6 +226,76 @@ public class GsonMonitorClasses extends GsonErrors {
 	 */
 	public GsonMonitorClasses() {}
 	
+	/**
+	 * Reads and writes the MonitorClasses objects field by field, without reflection.
+	 * Registered by <code>GsonManager</code>.
+	 * 
+	 * @author agent
+	 *
+	 */
+	static class MonitorClassesAdapter extends TypeAdapter<MonitorClasses> {
+		private static final Map<String, Integer> FIELDS = GsonManager.fieldIndex("systemtype", "monitor",
+				"name", "sql", "description", "decimals", "mapping", "charttype", "delta", "monitortype",
+				"systemaverage", "interval", "unit", "monitorid");
+
+		@Override
+		public MonitorClasses read(JsonReader in) throws IOException {
+			if (in.peek() == JsonToken.NULL) {
+				in.nextNull();
+				return null;
+			}
+			MonitorClasses monitorClass = new MonitorClasses();
+			in.beginObject();
+			while (in.hasNext()) {
+				Integer field = FIELDS.get(in.nextName());
+				switch (field == null ? -1 : field) {
+				case 0: monitorClass.systemtype = GsonManager.readString(in); break;
+				case 1: monitorClass.monitor = GsonManager.readString(in); break;
+				case 2: monitorClass.name = GsonManager.readString(in); break;
+				case 3: monitorClass.sql = GsonManager.readString(in); break;
+				case 4: monitorClass.description = GsonManager.readString(in); break;
+				case 5: monitorClass.decimals = GsonManager.readString(in); break;
+				case 6: monitorClass.mapping = GsonManager.readString(in); break;
+				case 7: monitorClass.charttype = GsonManager.readString(in); break;
+				case 8: monitorClass.delta = GsonManager.readString(in); break;
+				case 9: monitorClass.monitortype = GsonManager.readString(in); break;
+				case 10: monitorClass.systemaverage = GsonManager.readString(in); break;
+				case 11: monitorClass.interval = GsonManager.readString(in); break;
+				case 12: monitorClass.unit = GsonManager.readString(in); break;
+				case 13: monitorClass.monitorid = GsonManager.readString(in); break;
+				default: in.skipValue();
+				}
+			}
+			in.endObject();
+			monitorClass.parseNumbers();
+			return monitorClass;
+		}
+
+		@Override
+		public void write(JsonWriter out, MonitorClasses monitorClass) throws IOException {
+			if (monitorClass == null) {
+				out.nullValue();
+				return;
+			}
+			out.beginObject();
+			out.name("systemtype").value(monitorClass.systemtype);
+			out.name("monitor").value(monitorClass.monitor);
+			out.name("name").value(monitorClass.name);
+			out.name("sql").value(monitorClass.sql);
+			out.name("description").value(monitorClass.description);
+			out.name("decimals").value(monitorClass.decimals);
+			out.name("mapping").value(monitorClass.mapping);
+			out.name("charttype").value(monitorClass.charttype);
+			out.name("delta").value(monitorClass.delta);
+			out.name("monitortype").value(monitorClass.monitortype);
+			out.name("systemaverage").value(monitorClass.systemaverage);
+			out.name("interval").value(monitorClass.interval);
+			out.name("unit").value(monitorClass.unit);
+			out.name("monitorid").value(monitorClass.monitorid);
+			out.endObject();
+		}
+	}
+	
 	/**
 	 * Get the list of monitor id's.
 	 * 
@@ -22,10 +22,17 @@
 
 package com.skysql.java;
 
+import java.io.IOException;
 import java.util.List;
 
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
 /**
  * The Monitor data entity of the API.
+ * See <code>GsonMonitorSeries</code> to decode the samples as numbers.
  * 
  * @author Massimo Siani
  *
@@ -94,4 +101,53 @@ public class GsonMonitorData extends GsonErrors {
 			return repeats;
 		}
 	}
+
+	/**
+	 * Reads and writes the MonitorData objects without reflection.
+	 * Registered by <code>GsonManager</code>.
+	 * 
+	 * @author agent
+	 *
+	 */
+	static class MonitorDataAdapter extends TypeAdapter<MonitorData> {
+		@Override
+		public MonitorData read(JsonReader in) throws IOException {
+			if (in.peek() == JsonToken.NULL) {
+				in.nextNull();
+				return null;
+			}
+			MonitorData monitorData = new MonitorData();
+			in.beginObject();
+			while (in.hasNext()) {
+				String name = in.nextName();
+				if ("timestamp".equals(name)) {
+					monitorData.timestamp = GsonManager.readStringList(in);
+				} else if ("value".equals(name)) {
+					monitorData.value = GsonManager.readStringList(in);
+				} else if ("repeats".equals(name)) {
+					monitorData.repeats = GsonManager.readStringList(in);
+				} else {
+					in.skipValue();
+				}
+			}
+			in.endObject();
+			return monitorData;
+		}
+
+		@Override
+		public void write(JsonWriter out, MonitorData monitorData) throws IOException {
+			if (monitorData == null) {
+				out.nullValue();
+				return;
+			}
+			out.beginObject();
+			out.name("timestamp");
+			GsonManager.writeStringList(out, monitorData.timestamp);
+			out.name("value");
+			GsonManager.writeStringList(out, monitorData.value);
+			out.name("repeats");
+			GsonManager.writeStringList(out, monitorData.repeats);
+			out.endObject();
+		}
+	}
 }
@@ -0,0 +1,286 @@
+/*
+ * This file is distributed as part of the MariaDB Manager. It is free
+ * software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ *
+ * Copyright 2026 SkySQL Corporation Ab
+ *
+ * Author: agent
+ * Date: October 2026
+ */
+
+package com.skysql.java;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+/**
+ * The Monitor data entity of the API, decoded in columns of primitives.
+ * It reads the same JSON as <code>GsonMonitorData</code>, but the samples are
+ * stored in a <code>long[]</code>, a <code>double[]</code> and an <code>int[]</code>
+ * instead of lists of strings, which is several times smaller for the charts.
+ *
+ * @author agent
+ *
+ */
+public class GsonMonitorSeries extends GsonErrors {
+	private MonitorSeries monitor_data;
+	private MonitorSeries monitor_rawdata;
+
+	/**
+	 * Returns a <code>monitor_data</code> object if available,
+	 * or a <code>monitor_rawdata</code> object.
+	 * If both of them are <code>null</code>, returns <code>null</code>.
+	 *
+	 * @return	the MonitorSeries object, <code>null</code> if not set
+	 */
+	public MonitorSeries getMonitorSeries() {
+		if (monitor_data != null) return monitor_data;
+		else return monitor_rawdata;
+	}
+
+	/**
+	 * The samples of a monitor, in time order. A sample whose value is missing or
+	 * not a number has value <code>NaN</code>; a missing repeat count is <code>0</code>.
+	 *
+	 * @author agent
+	 *
+	 */
+	public static class MonitorSeries {
+		private static final long[]		NO_TIMESTAMPS = new long[0];
+		private static final double[]	NO_VALUES = new double[0];
+		private static final int[]		NO_REPEATS = new int[0];
+		private long[]					timestamp = NO_TIMESTAMPS;
+		private double[]				value = NO_VALUES;
+		private int[]					repeats = NO_REPEATS;
+
+		/**
+		 * @return the number of samples
+		 */
+		public int size() {
+			return timestamp.length;
+		}
+		/**
+		 * @param index the sample
+		 * @return the timestamp of the sample
+		 */
+		public long getTimestamp(int index) {
+			return timestamp[index];
+		}
+		/**
+		 * @param index the sample
+		 * @return the value of the sample, <code>NaN</code> if missing
+		 */
+		public double getValue(int index) {
+			return index < value.length ? value[index] : Double.NaN;
+		}
+		/**
+		 * @param index the sample
+		 * @return how many times the value was repeated, <code>0</code> if missing
+		 */
+		public int getRepeats(int index) {
+			return index < repeats.length ? repeats[index] : 0;
+		}
+		/**
+		 * Find the first sample of a time range.
+		 *
+		 * @param from the start of the range
+		 * @return the index of the first sample taken at or after <code>from</code>,
+		 * <code>size()</code> if there is none
+		 */
+		public int indexOf(long from) {
+			int index = Arrays.binarySearch(timestamp, from);
+			if (index < 0) return -index - 1;
+			while (index > 0 && timestamp[index - 1] == from) index--;
+			return index;
+		}
+		/**
+		 * The timestamp column. The array is shared, not a copy: do not modify it.
+		 *
+		 * @return the timestamps
+		 */
+		public long[] getTimestamps() {
+			return timestamp;
+		}
+		/**
+		 * The value column. The array is shared, not a copy: do not modify it.
+		 *
+		 * @return the values, may be shorter than the timestamps
+		 */
+		public double[] getValues() {
+			return value;
+		}
+		/**
+		 * The repeat column. The array is shared, not a copy: do not modify it.
+		 *
+		 * @return the repeat counts, may be shorter than the timestamps
+		 */
+		public int[] getRepeatCounts() {
+			return repeats;
+		}
+	}
+
+	/**
+	 * Reads the samples straight into the primitive columns, and writes them
+	 * back as JSON numbers. Registered by <code>GsonManager</code>.
+	 *
+	 * @author agent
+	 *
+	 */
+	static class MonitorSeriesAdapter extends TypeAdapter<MonitorSeries> {
+		/** The initial size of the columns, which grow as needed. */
+		private static final int INITIAL_CAPACITY = 256;
+
+		@Override
+		public MonitorSeries read(JsonReader in) throws IOException {
+			if (in.peek() == JsonToken.NULL) {
+				in.nextNull();
+				return null;
+			}
+			MonitorSeries series = new MonitorSeries();
+			in.beginObject();
+			while (in.hasNext()) {
+				String name = in.nextName();
+				if (in.peek() == JsonToken.NULL) {
+					in.nextNull();
+				} else if ("timestamp".equals(name)) {
+					series.timestamp = readLongs(in);
+				} else if ("value".equals(name)) {
+					series.value = readDoubles(in);
+				} else if ("repeats".equals(name)) {
+					series.repeats = readInts(in);
+				} else {
+					in.skipValue();
+				}
+			}
+			in.endObject();
+			return series;
+		}
+
+		@Override
+		public void write(JsonWriter out, MonitorSeries series) throws IOException {
+			if (series == null) {
+				out.nullValue();
+				return;
+			}
+			out.beginObject();
+			out.name("timestamp").beginArray();
+			for (long timestamp : series.timestamp) {
+				out.value(timestamp);
+			}
+			out.endArray();
+			out.name("value").beginArray();
+			for (double value : series.value) {
+				if (Double.isNaN(value) || Double.isInfinite(value)) {
+					out.nullValue();
+				} else {
+					out.value(value);
+				}
+			}
+			out.endArray();
+			out.name("repeats").beginArray();
+			for (int repeats : series.repeats) {
+				out.value(repeats);
+			}
+			out.endArray();
+			out.endObject();
+		}
+
+		private static long[] readLongs(JsonReader in) throws IOException {
+			long[] column = new long[INITIAL_CAPACITY];
+			int size = 0;
+			in.beginArray();
+			while (in.hasNext()) {
+				if (size == column.length) column = Arrays.copyOf(column, size * 2);
+				column[size++] = readLong(in);
+			}
+			in.endArray();
+			return Arrays.copyOf(column, size);
+		}
+		private static double[] readDoubles(JsonReader in) throws IOException {
+			double[] column = new double[INITIAL_CAPACITY];
+			int size = 0;
+			in.beginArray();
+			while (in.hasNext()) {
+				if (size == column.length) column = Arrays.copyOf(column, size * 2);
+				column[size++] = readNumber(in);
+			}
+			in.endArray();
+			return Arrays.copyOf(column, size);
+		}
+		private static int[] readInts(JsonReader in) throws IOException {
+			int[] column = new int[INITIAL_CAPACITY];
+			int size = 0;
+			in.beginArray();
+			while (in.hasNext()) {
+				if (size == column.length) column = Arrays.copyOf(column, size * 2);
+				column[size++] = (int) readLong(in);
+			}
+			in.endArray();
+			return Arrays.copyOf(column, size);
+		}
+		/**
+		 * Read an integer sample, which the API may send as a number or as a string.
+		 *
+		 * @param in the JSON reader.
+		 * @return the number, <code>0</code> if missing or not a number.
+		 * @throws IOException
+		 */
+		private static long readLong(JsonReader in) throws IOException {
+			if (in.peek() == JsonToken.STRING) {
+				String value = in.nextString();
+				try {
+					return Long.parseLong(value);
+				} catch (NumberFormatException nfex) {
+					try {
+						return (long) Double.parseDouble(value);
+					} catch (NumberFormatException nfex2) {
+						return 0;
+					}
+				}
+			}
+			double number = readNumber(in);
+			return Double.isNaN(number) ? 0 : (long) number;
+		}
+		/**
+		 * Read a sample, which the API may send as a number or as a string.
+		 * A JSON number is parsed in place, without creating a string.
+		 *
+		 * @param in the JSON reader.
+		 * @return the number, <code>NaN</code> if missing or not a number.
+		 * @throws IOException
+		 */
+		private static double readNumber(JsonReader in) throws IOException {
+			switch (in.peek()) {
+			case NUMBER:
+				return in.nextDouble();
+			case STRING:
+				String value = in.nextString();
+				try {
+					return Double.parseDouble(value);
+				} catch (NumberFormatException nfex) {
+					return Double.NaN;
+				}
+			default:
+				in.skipValue();
+				return Double.NaN;
+			}
+		}
+	}
+}
@@ -22,9 +22,18 @@
 
 package com.skysql.java;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
 
 /**
  * Contains the fields for the "node" API call.
@@ -34,6 +43,8 @@ import java.util.List;
  */
 public class GsonNode extends GsonErrors {
 	private final static int ERROR_INT_RETURN = -1;
+	/** Marks a numeric field not parsed yet. */
+	private final static int UNPARSED = Integer.MIN_VALUE;
 	private Nodes node;
 	private List<Nodes> nodes;
 	
@@ -89,6 +100,7 @@ public class GsonNode extends GsonErrors {
 	 */
 	public Nodes getNode(int index) {
 		if (index < 0) return null;
+		if (nodes == null) return index == 0 ? getNode() : null;
 		List<Nodes> dummy = getNodes();
 		if (dummy == null || dummy.size() < index+1) return null;
 		else return dummy.get(index);
@@ -120,28 +132,62 @@ public class GsonNode extends GsonErrors {
 		private String lastmonitored;
 		private String command;
 		private String taskid;
+		/** The numeric fields, parsed once. */
+		private transient int systemidValue = UNPARSED;
+		private transient int nodeidValue = UNPARSED;
+		private transient int instanceidValue = UNPARSED;
 		
+		/**
+		 * Parse the numeric fields. Called when the object is decoded; the getters
+		 * also call it for the objects that were built otherwise.
+		 */
+		private void parseNumbers() {
+			systemidValue = GsonManager.parseInt(systemid, ERROR_INT_RETURN);
+			nodeidValue = GsonManager.parseInt(nodeid, ERROR_INT_RETURN);
+			instanceidValue = instanceid != null && instanceid.isEmpty()
+					? 0 : GsonManager.parseInt(instanceid, ERROR_INT_RETURN);
+		}
+		/**
+		 * Build a node from the fields of a provisioned node, as the API
+		 * would return it for the node.
+		 * 
+		 * @param systemid		the systemid field
+		 * @param nodeid		the nodeid field
+		 * @param name			the name field
+		 * @param hostname		the hostname field
+		 * @param privateip		the privateip field
+		 * @param dbusername	the dbusername field
+		 * @param dbpassword	the dbpassword field
+		 * @return				the node
+		 */
+		static Nodes provisioned(String systemid, String nodeid, String name, String hostname,
+				String privateip, String dbusername, String dbpassword) {
+			Nodes node = new Nodes();
+			node.systemid = systemid;
+			node.nodeid = nodeid;
+			node.name = name;
+			node.hostname = hostname;
+			node.privateip = privateip;
+			node.dbusername = dbusername;
+			node.dbpassword = dbpassword;
+			node.parseNumbers();
+			return node;
+		}
 		/**
 		 * @return the systemid field of the JSON.
 		 * If it cannot be parsed as a number, returns <code>-1</code>.
 		 */
 		public int getSystemId() {
-			try {
-				return Integer.parseInt(systemid);
-			} catch (NumberFormatException nfex) {
-				return ERROR_INT_RETURN;
-			}
+			if (systemidValue == UNPARSED) parseNumbers();
+			return systemidValue;
 		}
 		/**
 		 * @return the nodeid field of the JSON.
 		 * If it cannot be parsed as a number, returns <code>-1</code>.
 		 */
 		public int getNodeId() {
-			try {
-				return Integer.parseInt(nodeid);
-			} catch (NumberFormatException nfex) {
-				return ERROR_INT_RETURN;
-			}
+			if (nodeidValue == UNPARSED) parseNumbers();
+			return nodeidValue;
 		}
 		/**
 		 * @return the name field of the JSON.
@@ -185,12 +231,8 @@ public class GsonNode extends GsonErrors {
 		 * If it cannot be parsed as a number, returns <code>-1</code>.
 		 */
 		public int getInstanceID() {
-			if (instanceid.isEmpty()) return 0;
-			try {
-				return Integer.parseInt(instanceid);
-			} catch (NumberFormatException nfex) {
-				return ERROR_INT_RETURN;
-			}
+			if (instanceidValue == UNPARSED) parseNumbers();
+			return instanceidValue;
 		}
 		/**
 		 * @return the dbusername field of the JSON.
@@ -300,6 +342,96 @@ public class GsonNode extends GsonErrors {
 		}
 	}
 	
+	/**
+	 * Reads and writes the Nodes objects field by field, without reflection.
+	 * Registered by <code>GsonManager</code>.
+	 * 
+	 * @author agent
+	 *
+	 */
+	static class NodesAdapter extends TypeAdapter<Nodes> {
+		private static final Map<String, Integer> FIELDS = GsonManager.fieldIndex("systemid", "nodeid",
+				"name", "state", "updated", "hostname", "publicip", "privateip", "port", "instanceid",
+				"dbusername", "dbpassword", "repusername", "reppassword", "commands", "monitorlatest",
+				"lastmonitored", "command", "taskid");
+		private final TypeAdapter<List<Commands>>			m_commands;
+		private final TypeAdapter<GsonSharedMonitorLatest>	m_monitorLatest;
+
+		NodesAdapter(Gson gson) {
+			m_commands = gson.getAdapter(new TypeToken<List<Commands>>() {});
+			m_monitorLatest = gson.getAdapter(GsonSharedMonitorLatest.class);
+		}
+
+		@Override
+		public Nodes read(JsonReader in) throws IOException {
+			if (in.peek() == JsonToken.NULL) {
+				in.nextNull();
+				return null;
+			}
+			Nodes node = new Nodes();
+			in.beginObject();
+			while (in.hasNext()) {
+				Integer field = FIELDS.get(in.nextName());
+				switch (field == null ? -1 : field) {
+				case 0: node.systemid = GsonManager.readString(in); break;
+				case 1: node.nodeid = GsonManager.readString(in); break;
+				case 2: node.name = GsonManager.readString(in); break;
+				case 3: node.state = GsonManager.readString(in); break;
+				case 4: node.updated = GsonManager.readString(in); break;
+				case 5: node.hostname = GsonManager.readString(in); break;
+				case 6: node.publicip = GsonManager.readString(in); break;
+				case 7: node.privateip = GsonManager.readString(in); break;
+				case 8: node.port = GsonManager.readString(in); break;
+				case 9: node.instanceid = GsonManager.readString(in); break;
+				case 10: node.dbusername = GsonManager.readString(in); break;
+				case 11: node.dbpassword = GsonManager.readString(in); break;
+				case 12: node.repusername = GsonManager.readString(in); break;
+				case 13: node.reppassword = GsonManager.readString(in); break;
+				case 14: node.commands = m_commands.read(in); break;
+				case 15: node.monitorlatest = m_monitorLatest.read(in); break;
+				case 16: node.lastmonitored = GsonManager.readString(in); break;
+				case 17: node.command = GsonManager.readString(in); break;
+				case 18: node.taskid = GsonManager.readString(in); break;
+				default: in.skipValue();
+				}
+			}
+			in.endObject();
+			node.parseNumbers();
+			return node;
+		}
+
+		@Override
+		public void write(JsonWriter out, Nodes node) throws IOException {
+			if (node == null) {
+				out.nullValue();
+				return;
+			}
+			out.beginObject();
+			out.name("systemid").value(node.systemid);
+			out.name("nodeid").value(node.nodeid);
+			out.name("name").value(node.name);
+			out.name("state").value(node.state);
+			out.name("updated").value(node.updated);
+			out.name("hostname").value(node.hostname);
+			out.name("publicip").value(node.publicip);
+			out.name("privateip").value(node.privateip);
+			out.name("port").value(node.port);
+			out.name("instanceid").value(node.instanceid);
+			out.name("dbusername").value(node.dbusername);
+			out.name("dbpassword").value(node.dbpassword);
+			out.name("repusername").value(node.repusername);
+			out.name("reppassword").value(node.reppassword);
+			out.name("commands");
+			m_commands.write(out, node.commands);
+			out.name("monitorlatest");
+			m_monitorLatest.write(out, node.monitorlatest);
+			out.name("lastmonitored").value(node.lastmonitored);
+			out.name("command").value(node.command);
+			out.name("taskid").value(node.taskid);
+			out.endObject();
+		}
+	}
+	
 	/**
 	 * Get the list of node id's.
 	 * 
@@ -23,7 +23,10 @@
 package com.skysql.java;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
 
 /**
  * Contains the fields for the node API call.
@@ -92,6 +95,93 @@ public class GsonNodeStates extends GsonErrors {
 	
 	public GsonNodeStates() {}
 	
+	/**
+	 * An immutable index of a list of node states, by state name and by state id,
+	 * for the lookups that are repeated on every state change of every node.
+	 * 
+	 * @author agent
+	 *
+	 */
+	public static class Index {
+		/** The node states, in the API order. */
+		private final List<NodeStates>				m_states;
+		/** The (lower case state name, node state) table. */
+		private final HashMap<String, NodeStates>	m_byName;
+		/** The (state id, node state) table. */
+		private final LongObjectMap<NodeStates>		m_byId;
+		private final List<String>					m_stateList;
+		private final List<String>					m_descriptionList;
+		
+		/**
+		 * Constructor. If several states have the same name or id, the first one wins.
+		 * 
+		 * @param states		the node states
+		 */
+		public Index(List<NodeStates> states) {
+			List<NodeStates> stateList = new ArrayList<NodeStates>(states);
+			List<String> names = new ArrayList<String>(states.size());
+			List<String> descriptions = new ArrayList<String>(states.size());
+			m_byName = new HashMap<String, NodeStates>(states.size() * 2);
+			LongObjectMap.Builder<NodeStates> byId = LongObjectMap.<NodeStates>empty().builder();
+			for (NodeStates state : stateList) {
+				names.add(state.getState());
+				descriptions.add(state.getDescription());
+				if (state.getState() != null) {
+					String key = state.getState().toLowerCase(Locale.ENGLISH);
+					if (! m_byName.containsKey(key)) m_byName.put(key, state);
+				}
+				if (byId.get(state.getStateId()) == null) byId.put(state.getStateId(), state);
+			}
+			m_states = Collections.unmodifiableList(stateList);
+			m_byId = byId.build();
+			m_stateList = Collections.unmodifiableList(names);
+			m_descriptionList = Collections.unmodifiableList(descriptions);
+		}
+		
+		/**
+		 * @return the node states, in the API order
+		 */
+		public List<NodeStates> getNodeStates() {
+			return m_states;
+		}
+		/**
+		 * @param state		the name of the state, case insensitive
+		 * @return			the state id, -1 if not found
+		 */
+		public int getIdFromState(String state) {
+			NodeStates nodeState = state == null ? null : m_byName.get(state.toLowerCase(Locale.ENGLISH));
+			return nodeState == null ? -1 : nodeState.getStateId();
+		}
+		/**
+		 * @param stateId	the state id
+		 * @return			the name of the state, null if not found
+		 */
+		public String getStateFromId(int stateId) {
+			NodeStates nodeState = m_byId.get(stateId);
+			return nodeState == null ? null : nodeState.getState();
+		}
+		/**
+		 * @param stateId	the state id
+		 * @return			the description of the state, null if not found
+		 */
+		public String getDescriptionFromId(int stateId) {
+			NodeStates nodeState = m_byId.get(stateId);
+			return nodeState == null ? null : nodeState.getDescription();
+		}
+		/**
+		 * @return the names of the states
+		 */
+		public List<String> getStateList() {
+			return m_stateList;
+		}
+		/**
+		 * @return the descriptions of the states
+		 */
+		public List<String> getDescriptionList() {
+			return m_descriptionList;
+		}
+	}
+	
 	/**
 	 * The full list of valid node state names.
 	 * 
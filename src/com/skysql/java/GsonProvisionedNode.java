@@ -118,6 +118,15 @@ public class GsonProvisionedNode extends GsonErrors {
 		public String getSystemtype() {
 			return systemtype;
 		}
+		/**
+		 * Convert the provisioned node to the node entity, field by field.
+		 * The system type is not a field of the node, and is dropped.
+		 * 
+		 * @return the node object
+		 */
+		public GsonNode.Nodes toNode() {
+			return GsonNode.Nodes.provisioned(systemid, nodeid, name, hostname, privateip, dbusername, dbpassword);
+		}
 	}
 
 	/**
@@ -22,9 +22,17 @@
 
 package com.skysql.java;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
 
 /**
  * Contains the fields for the system API call.
@@ -244,6 +252,90 @@ public class GsonSystem extends GsonErrors {
 		
 	}
 	
+	/**
+	 * Reads and writes the Systems objects field by field, without reflection.
+	 * Registered by <code>GsonManager</code>.
+	 * 
+	 * @author agent
+	 *
+	 */
+	static class SystemsAdapter extends TypeAdapter<Systems> {
+		private static final Map<String, Integer> FIELDS = GsonManager.fieldIndex("systemid", "systemtype",
+				"name", "started", "lastaccess", "updated", "state", "dbusername", "dbpassword",
+				"repusername", "reppassword", "nodes", "lastbackup", "properties", "monitorlatest",
+				"lastmonitored");
+		private final TypeAdapter<Properties>				m_properties;
+		private final TypeAdapter<GsonSharedMonitorLatest>	m_monitorLatest;
+
+		SystemsAdapter(Gson gson) {
+			m_properties = gson.getAdapter(Properties.class);
+			m_monitorLatest = gson.getAdapter(GsonSharedMonitorLatest.class);
+		}
+
+		@Override
+		public Systems read(JsonReader in) throws IOException {
+			if (in.peek() == JsonToken.NULL) {
+				in.nextNull();
+				return null;
+			}
+			Systems system = new Systems();
+			in.beginObject();
+			while (in.hasNext()) {
+				Integer field = FIELDS.get(in.nextName());
+				switch (field == null ? -1 : field) {
+				case 0: system.systemid = GsonManager.readString(in); break;
+				case 1: system.systemtype = GsonManager.readString(in); break;
+				case 2: system.name = GsonManager.readString(in); break;
+				case 3: system.started = GsonManager.readString(in); break;
+				case 4: system.lastaccess = GsonManager.readString(in); break;
+				case 5: system.updated = GsonManager.readString(in); break;
+				case 6: system.state = GsonManager.readString(in); break;
+				case 7: system.dbusername = GsonManager.readString(in); break;
+				case 8: system.dbpassword = GsonManager.readString(in); break;
+				case 9: system.repusername = GsonManager.readString(in); break;
+				case 10: system.reppassword = GsonManager.readString(in); break;
+				case 11: system.nodes = GsonManager.readStringList(in); break;
+				case 12: system.lastbackup = GsonManager.readString(in); break;
+				case 13: system.properties = m_properties.read(in); break;
+				case 14: system.monitorlatest = m_monitorLatest.read(in); break;
+				case 15: system.lastmonitored = GsonManager.readString(in); break;
+				default: in.skipValue();
+				}
+			}
+			in.endObject();
+			return system;
+		}
+
+		@Override
+		public void write(JsonWriter out, Systems system) throws IOException {
+			if (system == null) {
+				out.nullValue();
+				return;
+			}
+			out.beginObject();
+			out.name("systemid").value(system.systemid);
+			out.name("systemtype").value(system.systemtype);
+			out.name("name").value(system.name);
+			out.name("started").value(system.started);
+			out.name("lastaccess").value(system.lastaccess);
+			out.name("updated").value(system.updated);
+			out.name("state").value(system.state);
+			out.name("dbusername").value(system.dbusername);
+			out.name("dbpassword").value(system.dbpassword);
+			out.name("repusername").value(system.repusername);
+			out.name("reppassword").value(system.reppassword);
+			out.name("nodes");
+			GsonManager.writeStringList(out, system.nodes);
+			out.name("lastbackup").value(system.lastbackup);
+			out.name("properties");
+			m_properties.write(out, system.properties);
+			out.name("monitorlatest");
+			m_monitorLatest.write(out, system.monitorlatest);
+			out.name("lastmonitored").value(system.lastmonitored);
+			out.endObject();
+		}
+	}
+	
 	/**
 	 * Get the list of system id's.
 	 * First check if a single system exists, in case wrap it
@@ -0,0 +1,259 @@
+/*
+ * This file is distributed as part of the MariaDB Manager. It is free
+ * software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ *
+ * Copyright 2026 SkySQL Corporation Ab
+ *
+ * Author: agent
+ * Date: October 2026
+ */
+
+package com.skysql.java;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Per-host limit on the concurrent API connections.
+ * <p>
+ * This is not a connection pool: every <code>acquire</code> opens a
+ * new <code>HttpURLConnection</code>, and the JVM keep-alive cache decides
+ * whether the underlying socket is a warm one. The cache reuses a socket only
+ * if the previous response has been read completely, so <code>release</code>
+ * drains the error responses, and closes the connections it cannot drain.
+ * The cache keeps at most <code>http.maxConnections</code> idle sockets per
+ * host (5 by default) and ages them out by itself: the application should set
+ * that property to at least the per-host limit of this class, at startup.
+ * One instance is shared by all the <code>MonAPI</code> instances.
+ *
+ * @author agent
+ *
+ */
+public class HostConnectionLimiter {
+	/** Default maximum number of connections per host. */
+	public final static int			DEFAULT_MAX_PER_HOST = 8;
+	/** Default connect and read timeout, in milliseconds. */
+	public final static int			DEFAULT_TIMEOUT = 10000;
+	/**
+	 * The maximum number of connections per host.
+	 */
+	private final int									m_maxPerHost;
+	/**
+	 * The connect and read timeout, in milliseconds.
+	 */
+	private final int									m_timeout;
+	/**
+	 * The (protocol://host:port, host entry) table.
+	 */
+	private final ConcurrentHashMap<String, HostEntry>	m_hosts;
+	/** Connections handed out. */
+	private final AtomicLong							m_acquired;
+	/** Error responses drained, so that the socket could go back to the keep-alive cache. */
+	private final AtomicLong							m_drained;
+	/** Connections closed because the response could not be drained. */
+	private final AtomicLong							m_discarded;
+
+	/**
+	 * Constructor that uses the default parameters.
+	 */
+	public HostConnectionLimiter() {
+		this(DEFAULT_MAX_PER_HOST, DEFAULT_TIMEOUT);
+	}
+	/**
+	 * Constructor.
+	 *
+	 * @param maxPerHost		the maximum number of connections towards one host
+	 * @param timeout			the connect and read timeout, in milliseconds
+	 */
+	public HostConnectionLimiter(int maxPerHost, int timeout) {
+		m_maxPerHost = maxPerHost > 0 ? maxPerHost : DEFAULT_MAX_PER_HOST;
+		m_timeout = timeout;
+		m_hosts = new ConcurrentHashMap<String, HostEntry>(4);
+		m_acquired = new AtomicLong();
+		m_drained = new AtomicLong();
+		m_discarded = new AtomicLong();
+		if (! "true".equalsIgnoreCase(System.getProperty("http.keepAlive", "true"))) {
+			Logging.warn("http.keepAlive is disabled: every API request opens a new connection.");
+		}
+		try {
+			int jvmMax = Integer.parseInt(System.getProperty("http.maxConnections", "5"));
+			if (jvmMax < m_maxPerHost) {
+				Logging.info("http.maxConnections is " + jvmMax + ", lower than the " + m_maxPerHost
+						+ " concurrent API connections: some of them will not be kept alive.");
+			}
+		} catch (NumberFormatException e) {
+			// IGNORE
+		}
+	}
+
+	/**
+	 * Get a connection to the given URL. Waits at most the timeout for a connection
+	 * towards the same host to be released, if the maximum number is in use.
+	 * Every connection must be given back with <code>release</code>.
+	 *
+	 * @param url			the URL to connect to
+	 * @return				the connection, not yet connected
+	 * @throws IOException	if the maximum number is still in use or the connection cannot be opened
+	 */
+	public HttpURLConnection acquire(URL url) throws IOException {
+		HostEntry host = getHost(url);
+		try {
+			if (! host.m_permits.tryAcquire(m_timeout, TimeUnit.MILLISECONDS)) {
+				throw new IOException("Connection limit reached for " + host.m_key);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while waiting for a connection to " + host.m_key);
+		}
+		try {
+			HttpURLConnection conn = (HttpURLConnection) url.openConnection();
+			conn.setConnectTimeout(m_timeout);
+			conn.setReadTimeout(m_timeout);
+			m_acquired.incrementAndGet();
+			return conn;
+		} catch (IOException e) {
+			host.m_permits.release();
+			throw e;
+		} catch (RuntimeException e) {
+			host.m_permits.release();
+			throw e;
+		}
+	}
+
+	/**
+	 * Give back a connection obtained by <code>acquire</code>.
+	 * If the request has not completed, the error response is drained so that the
+	 * socket can be kept alive; if this is not possible, the connection is closed.
+	 *
+	 * @param conn			the connection, may be null
+	 * @param completed		true if the response body has been read and closed by the caller
+	 */
+	public void release(HttpURLConnection conn, boolean completed) {
+		if (conn == null) return;
+		HostEntry host = getHost(conn.getURL());
+		if (! completed) {
+			if (drain(conn.getErrorStream())) {
+				m_drained.incrementAndGet();
+			} else {
+				m_discarded.incrementAndGet();
+				conn.disconnect();
+			}
+		}
+		host.m_permits.release();
+	}
+
+	/**
+	 * @return the number of connections handed out
+	 */
+	public long getAcquired() {
+		return m_acquired.get();
+	}
+	/**
+	 * @return the number of error responses drained to keep the socket alive
+	 */
+	public long getDrained() {
+		return m_drained.get();
+	}
+	/**
+	 * @return the number of connections closed because they could not be reused
+	 */
+	public long getDiscarded() {
+		return m_discarded.get();
+	}
+	/**
+	 * @return the maximum number of connections per host
+	 */
+	public int getMaxPerHost() {
+		return m_maxPerHost;
+	}
+
+	/**
+	 * A summary of the counters, for logging purposes.
+	 */
+	@Override
+	public String toString() {
+		return "connection limiter: " + getAcquired() + " acquired, " + getDrained() + " drained, "
+				+ getDiscarded() + " discarded";
+	}
+
+	/**
+	 * Read and close a response stream, so that the underlying socket
+	 * goes back to the keep-alive cache.
+	 *
+	 * @param in		the stream, may be null
+	 * @return			true if the stream has been drained
+	 */
+	private boolean drain(InputStream in) {
+		if (in == null) return false;
+		try {
+			byte[] buffer = new byte[512];
+			while (in.read(buffer) >= 0) {
+				// discard
+			}
+			in.close();
+			return true;
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Return the entry of the host of the URL, creating it if necessary.
+	 *
+	 * @param url		the URL
+	 * @return			the host entry
+	 */
+	private HostEntry getHost(URL url) {
+		int port = url.getPort() == -1 ? url.getDefaultPort() : url.getPort();
+		String key = url.getProtocol() + "://" + url.getHost() + ":" + port;
+		HostEntry host = m_hosts.get(key);
+		if (host == null) {
+			HostEntry newHost = new HostEntry(key, m_maxPerHost);
+			host = m_hosts.putIfAbsent(key, newHost);
+			if (host == null) host = newHost;
+		}
+		return host;
+	}
+
+	/**
+	 * The connections towards one host.
+	 *
+	 * @author agent
+	 *
+	 */
+	private static class HostEntry {
+		/** protocol://host:port */
+		private final String			m_key;
+		/** One permit per connection that may be open. */
+		private final Semaphore			m_permits;
+
+		/**
+		 * Constructor.
+		 *
+		 * @param key			the host key
+		 * @param maxPerHost	the number of connections allowed
+		 */
+		private HostEntry(String key, int maxPerHost) {
+			m_key = key;
+			m_permits = new Semaphore(maxPerHost, true);
+		}
+	}
+}
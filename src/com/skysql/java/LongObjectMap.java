@@ -0,0 +1,267 @@
+/*
+ * This file is distributed as part of the MariaDB Manager. It is free
+ * software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ *
+ * Copyright 2026 SkySQL Corporation Ab
+ *
+ * Author: agent
+ * Date: October 2026
+ */
+
+package com.skysql.java;
+
+import java.util.Arrays;
+
+/**
+ * An immutable map from primitive <code>long</code> keys to objects, without
+ * boxing. The entries are kept in insertion order in two dense arrays, which
+ * an open-addressing table with linear probing indexes by key. A changed map
+ * is made with a <code>Builder</code>, which copies the entries once.
+ *
+ * @author agent
+ *
+ * @param <V>	the type of the values
+ */
+final class LongObjectMap<V> {
+	@SuppressWarnings("rawtypes")
+	private static final LongObjectMap	EMPTY = new LongObjectMap<Object>(new long[0], new Object[0], 0);
+	/** The keys, in insertion order. */
+	private final long[]				m_keys;
+	/** The values, in insertion order. */
+	private final Object[]				m_values;
+	/** The number of entries. */
+	private final int					m_size;
+	/** The table of the entry positions plus one, indexed by the hash of the key; 0 is free. */
+	private final int[]					m_index;
+
+	private LongObjectMap(long[] keys, Object[] values, int size) {
+		m_keys = keys;
+		m_values = values;
+		m_size = size;
+		m_index = new int[capacity(size)];
+		int mask = m_index.length - 1;
+		for (int i=0; i<size; i++) {
+			int slot = hash(keys[i]) & mask;
+			while (m_index[slot] != 0) {
+				slot = (slot + 1) & mask;
+			}
+			m_index[slot] = i + 1;
+		}
+	}
+
+	/**
+	 * @return the empty map
+	 */
+	@SuppressWarnings("unchecked")
+	static <V> LongObjectMap<V> empty() {
+		return (LongObjectMap<V>) EMPTY;
+	}
+
+	/**
+	 * Pack two integers in a key, e.g. a system ID and a node ID.
+	 *
+	 * @param high		the high 32 bits
+	 * @param low		the low 32 bits
+	 * @return			the key
+	 */
+	static long pack(int high, int low) {
+		return ((long) high << 32) | (low & 0xffffffffL);
+	}
+
+	/**
+	 * @param key		the key
+	 * @return			the value of the key, null if not present
+	 */
+	@SuppressWarnings("unchecked")
+	V get(long key) {
+		int position = position(key);
+		return position < 0 ? null : (V) m_values[position];
+	}
+	/**
+	 * @return the number of entries
+	 */
+	int size() {
+		return m_size;
+	}
+	/**
+	 * @param position		the position in insertion order, from 0 to <code>size() - 1</code>
+	 * @return				the key at the position
+	 */
+	long keyAt(int position) {
+		return m_keys[position];
+	}
+	/**
+	 * @param position		the position in insertion order, from 0 to <code>size() - 1</code>
+	 * @return				the value at the position
+	 */
+	@SuppressWarnings("unchecked")
+	V valueAt(int position) {
+		return (V) m_values[position];
+	}
+	/**
+	 * @return a builder that starts from the entries of this map
+	 */
+	Builder<V> builder() {
+		return new Builder<V>(this);
+	}
+	/**
+	 * @param key		the key
+	 * @param value		the value
+	 * @return			a map with the key set to the value
+	 */
+	LongObjectMap<V> with(long key, V value) {
+		return builder().put(key, value).build();
+	}
+
+	private int position(long key) {
+		int mask = m_index.length - 1;
+		int slot = hash(key) & mask;
+		int entry;
+		while ((entry = m_index[slot]) != 0) {
+			if (m_keys[entry - 1] == key) return entry - 1;
+			slot = (slot + 1) & mask;
+		}
+		return -1;
+	}
+	private static int hash(long key) {
+		long h = key * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32));
+	}
+	/**
+	 * @return a power of two, at least twice the size
+	 */
+	private static int capacity(int size) {
+		int capacity = 2;
+		while (capacity < size * 2) {
+			capacity <<= 1;
+		}
+		return capacity;
+	}
+
+	/**
+	 * Collects the entries of a new map. Setting an existing key replaces
+	 * the value and keeps its position.
+	 *
+	 * @author agent
+	 *
+	 * @param <V>	the type of the values
+	 */
+	static final class Builder<V> {
+		private long[]			m_keys;
+		private Object[]		m_values;
+		private int				m_size;
+		private int[]			m_index;
+
+		private Builder(LongObjectMap<V> from) {
+			m_keys = Arrays.copyOf(from.m_keys, Math.max(from.m_size, 4));
+			m_values = Arrays.copyOf(from.m_values, m_keys.length);
+			m_size = from.m_size;
+			m_index = from.m_index.clone();
+		}
+
+		/**
+		 * @param key		the key
+		 * @return			the value of the key, null if not present
+		 */
+		@SuppressWarnings("unchecked")
+		V get(long key) {
+			int mask = m_index.length - 1;
+			int slot = hash(key) & mask;
+			int entry;
+			while ((entry = m_index[slot]) != 0) {
+				if (m_keys[entry - 1] == key) return (V) m_values[entry - 1];
+				slot = (slot + 1) & mask;
+			}
+			return null;
+		}
+		/**
+		 * @return the number of entries
+		 */
+		int size() {
+			return m_size;
+		}
+		/**
+		 * @param position		the position in insertion order
+		 * @return				the key at the position
+		 */
+		long keyAt(int position) {
+			return m_keys[position];
+		}
+		/**
+		 * @param position		the position in insertion order
+		 * @return				the value at the position
+		 */
+		@SuppressWarnings("unchecked")
+		V valueAt(int position) {
+			return (V) m_values[position];
+		}
+		/**
+		 * @param position		the position in insertion order
+		 * @param value			the new value at the position
+		 */
+		void setValueAt(int position, V value) {
+			m_values[position] = value;
+		}
+		/**
+		 * @param key		the key
+		 * @param value		the value
+		 * @return			this builder
+		 */
+		Builder<V> put(long key, V value) {
+			int mask = m_index.length - 1;
+			int slot = hash(key) & mask;
+			int entry;
+			while ((entry = m_index[slot]) != 0) {
+				if (m_keys[entry - 1] == key) {
+					m_values[entry - 1] = value;
+					return this;
+				}
+				slot = (slot + 1) & mask;
+			}
+			if (m_size == m_keys.length) {
+				m_keys = Arrays.copyOf(m_keys, m_size * 2);
+				m_values = Arrays.copyOf(m_values, m_size * 2);
+			}
+			m_keys[m_size] = key;
+			m_values[m_size] = value;
+			m_size++;
+			if (m_index.length < capacity(m_size)) {
+				rehash();
+			} else {
+				m_index[slot] = m_size;
+			}
+			return this;
+		}
+		/**
+		 * @return the map
+		 */
+		LongObjectMap<V> build() {
+			if (m_size == 0) return empty();
+			return new LongObjectMap<V>(Arrays.copyOf(m_keys, m_size), Arrays.copyOf(m_values, m_size), m_size);
+		}
+
+		private void rehash() {
+			m_index = new int[capacity(m_size)];
+			int mask = m_index.length - 1;
+			for (int i=0; i<m_size; i++) {
+				int slot = hash(m_keys[i]) & mask;
+				while (m_index[slot] != 0) {
+					slot = (slot + 1) & mask;
+				}
+				m_index[slot] = i + 1;
+			}
+		}
+	}
+}
@@ -23,11 +23,12 @@
 package com.skysql.java;
 
 import java.io.BufferedReader;
+import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.OutputStreamWriter;
-import java.lang.reflect.Method;
+import java.io.Reader;
 import java.net.ConnectException;
 import java.net.HttpURLConnection;
 import java.net.URL;
@@ -38,7 +39,19 @@ import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 import java.util.Properties;
+import java.util.Random;
 import java.util.TimeZone;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -70,14 +83,35 @@ public class MonAPI {
 	 * Execute stored batch commands?
 	 */
 	private boolean		m_bufferingExecution;
-	/**
-	 * Count the number of calls, to avoid buffering too often
-	 */
-	private int			m_cycles;
 	/**
 	 * Timezone read from the php configuration. Assume /etc/php.ini, default to Europe/London.
 	 */
 	private String		m_timeZone = null;
+	/**
+	 * The per-host connection limit shared by all the instances.
+	 */
+	private static final HostConnectionLimiter	CONNECTION_LIMITER = createConnectionLimiter();
+	/**
+	 * The bounded executor that runs the asynchronous requests of all the instances.
+	 */
+	private static final ExecutorService	ASYNC_EXECUTOR = createAsyncExecutor();
+	/**
+	 * How the connections to the API are handled by this instance.
+	 */
+	private volatile TRANSPORT				m_transport = defaultTransport();
+
+	/**
+	 * The available ways to connect to the API.
+	 * 
+	 * @author agent
+	 *
+	 */
+	public enum TRANSPORT {
+		/** Keep-alive connections, limited per host by the shared <code>HostConnectionLimiter</code> (default). */
+		KEEPALIVE,
+		/** A new connection for every request, closed as soon as the response is read. */
+		DIRECT;
+	}
 
 	/**
 	 * Constructs the MonAPI instance. This consists of obtaining the information required
@@ -108,7 +142,24 @@ public class MonAPI {
 	public MonAPI(boolean buffer, int APIKeyId) {
 		getApiCredentials(APIKeyId);
 		m_bufferingExecution = buffer;
-		m_cycles = 0;
+	}
+
+	/**
+	 * Returns the transport used by this instance.
+	 * 
+	 * @return		the transport
+	 */
+	public TRANSPORT getTransport() {
+		return m_transport;
+	}
+	/**
+	 * Sets the transport used by this instance. The default is read from the
+	 * SKYSQL_API_TRANSPORT system property (keepalive or direct), and is keepalive if it is not set.
+	 * 
+	 * @param transport		the transport
+	 */
+	public void setTransport(TRANSPORT transport) {
+		if (transport != null) m_transport = transport;
 	}
 
 	/**
@@ -329,6 +380,118 @@ public class MonAPI {
 		return outJson;
 	}
 
+	/**
+	 * Returns the Java object decoded from the API response. Only for GET requests.
+	 * The response is decoded while it is read from the connection, without building
+	 * the whole JSON as a string. If the class extends <code>GsonErrors</code> and the
+	 * API returned errors or warnings, they are logged and null is returned.
+	 * 
+	 * @param restRequest		the API URI
+	 * @param pName				an array with the names of the parameters, can be null
+	 * @param pValue			an array with the values of the parameters, can be null
+	 * @param lastUpdate		the date for the If-Modified-Since header in RFC 2822 format, may be null or empty
+	 * @param objClass			the class of the Java object, e.g. GsonNode.class
+	 * @return					the Java object, null if an error occurred or code 304 is returned
+	 */
+	public <T> T getReturnedObject(String restRequest, String[] pName, String[] pValue, String lastUpdate,
+			final Class<T> objClass) {
+		return restGet(restRequest, pName, pValue, lastUpdate, new ResponseReader<T>() {
+			public T read(Reader in) {
+				return GsonManager.fromJson(in, objClass);
+			}
+		});
+	}
+
+	/**
+	 * Asynchronous version of <code>getReturnedJson(restRequest, pName, pValue, null)</code>.
+	 * 
+	 * @param restRequest		the API URI
+	 * @param pName				an array with the names of the parameters, can be null
+	 * @param pValue			an array with the values of the parameters, can be null
+	 * @return					the future Json from the API
+	 */
+	public Future<String> getReturnedJsonAsync(String restRequest, String[] pName, String[] pValue) {
+		return getReturnedJsonAsync(restRequest, pName, pValue, null);
+	}
+	/**
+	 * Asynchronous version of <code>getReturnedJson</code>. The request runs on the
+	 * shared executor, so that the caller may keep many requests in flight.
+	 * 
+	 * @param restRequest		the API URI
+	 * @param pName				an array with the names of the parameters, can be null
+	 * @param pValue			an array with the values of the parameters, can be null
+	 * @param lastUpdate		the date for the If-Modified-Since header in RFC 2822 format, may be null or empty
+	 * @return					the future Json from the API, empty string if code 304 is returned
+	 */
+	public Future<String> getReturnedJsonAsync(final String restRequest, final String[] pName,
+			final String[] pValue, final String lastUpdate) {
+		return ASYNC_EXECUTOR.submit(new Callable<String>() {
+			public String call() {
+				return getReturnedJson(restRequest, pName, pValue, lastUpdate);
+			}
+		});
+	}
+	/**
+	 * Asynchronous version of <code>updateValue</code>. Sends a PUT request.
+	 * 
+	 * @param restRequest	the API URI
+	 * @param pName			the name of the parameter
+	 * @param pValue		the value of the parameter
+	 * @return				the future outcome, true on success
+	 */
+	public Future<Boolean> updateValueAsync(final String restRequest, final String pName, final String pValue) {
+		return ASYNC_EXECUTOR.submit(new Callable<Boolean>() {
+			public Boolean call() {
+				return updateValue(restRequest, pName, pValue);
+			}
+		});
+	}
+	/**
+	 * Asynchronous version of <code>updateValue</code>. Sends a PUT request.
+	 * 
+	 * @param restRequest	the API URI
+	 * @param pName			an array with the names of the parameters
+	 * @param pValue		an array with the values of the parameters
+	 * @return				the future Json from the API, null if an error occurred
+	 */
+	public Future<String> updateValueAsync(final String restRequest, final String[] pName, final String[] pValue) {
+		return ASYNC_EXECUTOR.submit(new Callable<String>() {
+			public String call() {
+				return updateValue(restRequest, pName, pValue);
+			}
+		});
+	}
+	/**
+	 * Asynchronous version of <code>bulkMonitorValue</code>. Sends a POST request.
+	 * 
+	 * @param apiRequest	the request uri
+	 * @param fields		the names of the parameters
+	 * @param values		the values of the parameters
+	 * @return				the future outcome, true if the update was performed
+	 */
+	public Future<Boolean> bulkMonitorValueAsync(final String apiRequest, final String[] fields, final String[] values) {
+		return ASYNC_EXECUTOR.submit(new Callable<Boolean>() {
+			public Boolean call() {
+				return bulkMonitorValue(apiRequest, fields, values);
+			}
+		});
+	}
+	/**
+	 * Asynchronous version of <code>MonitorValue</code>. Sends a POST request.
+	 * 
+	 * @param systemID		The ID of the System
+	 * @param monitorKey	The key of the monitor itself
+	 * @param value			The observed value
+	 * @return				the future outcome, true if the update was performed
+	 */
+	public Future<Boolean> MonitorValueAsync(final int systemID, final String monitorKey, final String value) {
+		return ASYNC_EXECUTOR.submit(new Callable<Boolean>() {
+			public Boolean call() {
+				return MonitorValue(systemID, monitorKey, value);
+			}
+		});
+	}
+
 	/**
 	 * Send a GET request to the API and set the If-Modified-Since header.
 	 * The lists of names and values of parameters to be passed to the API
@@ -341,7 +504,21 @@ public class MonAPI {
 	 * @return				The output of the API (a JSON string)
 	 */
 	private String restGet(String restRequest, String[] pName, String[] pValue, String lastUpdate) {
-		String result = "";
+		String result = restGet(restRequest, pName, pValue, lastUpdate, STRING_READER);
+		return result == null ? "" : result;
+	}
+	/**
+	 * Send a GET request to the API and decode the response while it is read.
+	 * 
+	 * @param restRequest	The URL, excluding the fixed stem
+	 * @param pName[]		The parameter names for the GET request
+	 * @param pValue[]		The parameter values for the GET request
+	 * @param lastUpdate	The If-Modified-Since date, in RFC 2822 format
+	 * @param reader		Decodes the response
+	 * @return				The decoded response, null if an error occurred or code 304 is returned
+	 */
+	private <T> T restGet(String restRequest, String[] pName, String[] pValue, String lastUpdate,
+			ResponseReader<T> reader) {
 		String value = "";
 		if (pName != null && pValue != null && ! pName[0].isEmpty()) {
 			for (int i=0; i < pName.length; i++) {
@@ -349,6 +526,8 @@ public class MonAPI {
 			}
 			value = value.substring(1);
 		}
+		HttpURLConnection apiConn = null;
+		boolean completed = false;
 		try {
 			// set up authorization
 			String reqString = "" + m_apiHost + "/" + restRequest;
@@ -360,30 +539,35 @@ public class MonAPI {
 
 			// set up connection
 			URL postURL = new URL(reqString);
-			HttpURLConnection apiConn = (HttpURLConnection) postURL.openConnection();
+			apiConn = openConnection(postURL);
 			if (lastUpdate != null && lastUpdate != "") {
 				apiConn.setRequestProperty("If-Modified-Since", lastUpdate);
 			}
 			setUpConn(apiConn, sb, rfcdate, value, "GET");
 
-			// get output
-			BufferedReader in = new BufferedReader(new InputStreamReader(apiConn.getInputStream()));
-			String tmp;
-			while ((tmp = in.readLine()) != null)
-				result += tmp + "\n";
+			// decode the output as it arrives
+			Reader in = new BufferedReader(new InputStreamReader(apiConn.getInputStream(), "UTF-8"));
+			T result = null;
+			if (apiConn.getResponseCode() != 304) {
+				result = reader.read(in);
+			}
+			// the rest of the body, if any, so that the connection can be reused
+			while (in.skip(Long.MAX_VALUE) > 0) {
+				// IGNORE
+			}
 			in.close();
 
-			if (apiConn.getResponseCode() == 304) {
-				result = "";
-			}
+			completed = true;
+			return result;
 		} catch (ConnectException e) {
 			Logging.error("Cannot connect to the web server.");
-			return "";
+			return null;
 		} catch (Exception e) {
 			Logging.error(e.getMessage());
-			return "";
+			return null;
+		} finally {
+			closeConnection(apiConn, completed);
 		}
-		return result;
 	}
 
 	/**
@@ -395,40 +579,23 @@ public class MonAPI {
 	 * @return				The output of the API (a JSON string)
 	 */
 	private String restPut(String restRequest, String[] pName, String[] pValue) {
-		String result = "";
-		String value = "";
-		if (pName != null && pValue != null && ! pName[0].isEmpty()) {
-			for (int i=0; i < pName.length; i++) {
-				value += "&" + pName[i] + "=" + pValue[i];
-			}
-			value = value.substring(1);
-		}
+		long started = APIBatchExecution.now();
+		String result;
 		try {
-			// set up authorization
-			String reqString = "" + m_apiHost + "/" + restRequest;
-			String rfcdate = setDate();
-			String sb = this.setAuth(restRequest, rfcdate);
-			// set up connection
-			URL postURL = new URL(reqString);
-			HttpURLConnection apiConn = (HttpURLConnection) postURL.openConnection();
-			setUpConn(apiConn, sb, rfcdate, value, "PUT");
-			// get output
-			BufferedReader in = new BufferedReader(new InputStreamReader(apiConn.getInputStream()));
-			String tmp;
-			while ((tmp = in.readLine()) != null) {
-				result += tmp + "\n";
-			}
-			in.close();
-			// run buffer
-			runBuffer();
-			if (apiConn.getResponseCode() != 200) {
-				throw new RuntimeException("Failed : HTTP error : "
-						+ apiConn.getResponseMessage() + ": returned data: " + result);
-			}
+			result = restWrite(PendingRequest.METHOD.PUT, restRequest, pName, pValue);
+		} catch (RejectedException e) {
+			Logging.error("The API rejected PUT " + restRequest + ": " + e.getMessage());
+			return null;
 		} catch (Exception e) {
-			pushFailedApi("restPut", restRequest, pName, pValue);
+			pushFailedApi(PendingRequest.METHOD.PUT, restRequest, pName, pValue);
 			return null;
 		}
+		// the queued values of these fields are stale now
+		if (this.m_bufferingExecution) {
+			APIBatchExecution.written(restRequest, pName, started);
+		}
+		// run buffer, once the connection has been released
+		runBuffer();
 		return result;
 	}
 
@@ -440,6 +607,33 @@ public class MonAPI {
 	 * @param pValue		The parameter values for the port request
 	 */
 	private boolean restPost(String restRequest, String[] pName, String[] pValue) {
+		try {
+			restWrite(PendingRequest.METHOD.POST, restRequest, pName, pValue);
+		} catch (RejectedException e) {
+			Logging.error("The API rejected POST " + restRequest + ": " + e.getMessage());
+			return false;
+		} catch (Exception e) {
+			pushFailedApi(PendingRequest.METHOD.POST, restRequest, pName, pValue);
+			return false;
+		}
+		// buffer, once the connection has been released
+		runBuffer();
+		return true;
+	}
+
+	/**
+	 * Send a PUT or POST request to the API.
+	 * 
+	 * @param method		The HTTP method
+	 * @param restRequest	The URL, excluding the fixed stem
+	 * @param pName			The parameter names
+	 * @param pValue		The parameter values
+	 * @return				The output of the API (a JSON string)
+	 * @throws RejectedException	if the API refused the request, which cannot succeed if sent again
+	 * @throws Exception			if the request failed otherwise, e.g. the API is not available
+	 */
+	private String restWrite(PendingRequest.METHOD method, String restRequest, String[] pName, String[] pValue)
+			throws Exception {
 		String result = "";
 		String value = "";
 		if (pName != null && pValue != null && ! pName[0].isEmpty()) {
@@ -448,33 +642,49 @@ public class MonAPI {
 			}
 			value = value.substring(1);
 		}
+		HttpURLConnection apiConn = null;
+		boolean completed = false;
 		try {
-			// set up authorization for the redirected webpage (ie, $_POST variable)
+			// set up authorization (for a POST, for the redirected webpage, ie $_POST variable)
 			String reqString = "" + m_apiHost + "/" + restRequest;
 			String rfcdate = setDate();
 			String sb = this.setAuth(restRequest, rfcdate);
 			// set up connection
 			URL postURL = new URL(reqString);
-			HttpURLConnection apiConn = (HttpURLConnection) postURL.openConnection();
-			setUpConn(apiConn, sb, rfcdate, value, "POST");
-			// get output
-			BufferedReader in = new BufferedReader(new InputStreamReader(apiConn.getInputStream()));
-			String tmp;
-			while ((tmp = in.readLine()) != null) {
-				result += tmp + "\n";
+			apiConn = openConnection(postURL);
+			setUpConn(apiConn, sb, rfcdate, value, method.name());
+			int code = apiConn.getResponseCode();
+			if (code >= 400 && code < 500 && code != HttpURLConnection.HTTP_CLIENT_TIMEOUT && code != 429) {
+				throw new RejectedException("HTTP error " + code + ": " + apiConn.getResponseMessage());
 			}
+			// get output
+			Reader in = new InputStreamReader(apiConn.getInputStream(), "UTF-8");
+			result = readAll(in);
 			in.close();
-			// buffer
-			runBuffer();
-			if (apiConn.getResponseCode() != HttpURLConnection.HTTP_OK) {
+			completed = true;
+			if (code != HttpURLConnection.HTTP_OK) {
 				throw new RuntimeException("Failed : HTTP error : "
 						+ apiConn.getResponseMessage() + ": returned data: " + result);
 			}
-		} catch (Exception e) {
-			pushFailedApi("restPost", restRequest, pName, pValue);
-			return false;
+			return result;
+		} finally {
+			closeConnection(apiConn, completed);
+		}
+	}
+
+	/**
+	 * The API refused a request, with a client error status other than a timeout
+	 * or a throttling: sending it again cannot succeed.
+	 * 
+	 * @author agent
+	 *
+	 */
+	private static class RejectedException extends IOException {
+		private static final long serialVersionUID = 1L;
+
+		private RejectedException(String message) {
+			super(message);
 		}
-		return true;
 	}
 
 
@@ -486,6 +696,105 @@ public class MonAPI {
 
 
 
+	/**
+	 * Open a connection to the API with the transport of this instance.
+	 * 
+	 * @param url			the request URL
+	 * @return				the connection, not yet connected
+	 * @throws IOException
+	 */
+	private HttpURLConnection openConnection(URL url) throws IOException {
+		if (m_transport == TRANSPORT.KEEPALIVE) {
+			return CONNECTION_LIMITER.acquire(url);
+		}
+		HttpURLConnection apiConn = (HttpURLConnection) url.openConnection();
+		apiConn.setConnectTimeout(HostConnectionLimiter.DEFAULT_TIMEOUT);
+		apiConn.setReadTimeout(HostConnectionLimiter.DEFAULT_TIMEOUT);
+		apiConn.setRequestProperty("Connection", "close");
+		return apiConn;
+	}
+	/**
+	 * Give back a connection opened by <code>openConnection</code>.
+	 * 
+	 * @param apiConn		the connection, may be null
+	 * @param completed		true if the response has been read completely
+	 */
+	private void closeConnection(HttpURLConnection apiConn, boolean completed) {
+		if (apiConn == null) return;
+		if (m_transport == TRANSPORT.KEEPALIVE) {
+			CONNECTION_LIMITER.release(apiConn, completed);
+		} else {
+			apiConn.disconnect();
+		}
+	}
+	/**
+	 * Reads the default transport from the SKYSQL_API_TRANSPORT system property.
+	 * 
+	 * @return		the transport, KEEPALIVE if the property is not set or invalid
+	 */
+	private static TRANSPORT defaultTransport() {
+		String prop = System.getProperty("SKYSQL_API_TRANSPORT");
+		if (prop != null && ! prop.isEmpty()) {
+			try {
+				return TRANSPORT.valueOf(prop.trim().toUpperCase());
+			} catch (IllegalArgumentException e) {
+				Logging.error("Unknown API transport " + prop + ", using keep-alive connections.");
+			}
+		}
+		return TRANSPORT.KEEPALIVE;
+	}
+	/**
+	 * Returns the connection limiter shared by all the instances, e.g. to read its counters.
+	 * 
+	 * @return		the connection limiter
+	 */
+	public static HostConnectionLimiter getConnectionLimiter() {
+		return CONNECTION_LIMITER;
+	}
+	/**
+	 * Builds the connection limiter. The maximum number of connections per host and the
+	 * timeout in milliseconds can be set with the SKYSQL_API_MAXCONNECTIONS and
+	 * SKYSQL_API_TIMEOUT system properties. The JVM keeps alive at most http.maxConnections
+	 * sockets per host, which should not be lower than SKYSQL_API_MAXCONNECTIONS.
+	 * 
+	 * @return		the connection limiter
+	 */
+	private static HostConnectionLimiter createConnectionLimiter() {
+		int maxPerHost = HostConnectionLimiter.DEFAULT_MAX_PER_HOST;
+		int timeout = HostConnectionLimiter.DEFAULT_TIMEOUT;
+		try {
+			String prop = System.getProperty("SKYSQL_API_MAXCONNECTIONS");
+			if (prop != null && ! prop.isEmpty()) maxPerHost = Integer.parseInt(prop);
+			prop = System.getProperty("SKYSQL_API_TIMEOUT");
+			if (prop != null && ! prop.isEmpty()) timeout = Integer.parseInt(prop);
+		} catch (NumberFormatException e) {
+			Logging.error("Invalid connection limiter settings, using the defaults.");
+		}
+		return new HostConnectionLimiter(maxPerHost, timeout);
+	}
+	/**
+	 * Builds the executor for the asynchronous requests. It runs as many threads as the
+	 * connections allowed towards one host, and queues at most SKYSQL_API_ASYNCQUEUE
+	 * requests (default 256). When the queue is full, the caller runs the request itself,
+	 * which throttles the producers instead of growing the queue without bounds.
+	 * 
+	 * @return		the executor
+	 */
+	private static ExecutorService createAsyncExecutor() {
+		int threads = CONNECTION_LIMITER.getMaxPerHost();
+		int queue = 256;
+		try {
+			String prop = System.getProperty("SKYSQL_API_ASYNCQUEUE");
+			if (prop != null && ! prop.isEmpty()) queue = Integer.parseInt(prop);
+		} catch (NumberFormatException e) {
+			Logging.error("Invalid asynchronous queue size, using the default.");
+		}
+		ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+				new ArrayBlockingQueue<Runnable>(queue), new DaemonThreadFactory("MonAPI-async"),
+				new ThreadPoolExecutor.CallerRunsPolicy());
+		executor.allowCoreThreadTimeOut(true);
+		return executor;
+	}
 	/**
 	 * Read the timezone configuration and set the appropriate date format.
 	 * 
@@ -568,35 +877,154 @@ public class MonAPI {
 		return;
 	}
 	/**
-	 * Run the buffer queue.
+	 * Read a whole response body.
+	 * 
+	 * @param in		the body
+	 * @return			the body as a string
+	 * @throws IOException
+	 */
+	private static String readAll(Reader in) throws IOException {
+		StringBuilder result = new StringBuilder(1024);
+		char[] buffer = new char[4096];
+		int read;
+		while ((read = in.read(buffer)) >= 0) {
+			result.append(buffer, 0, read);
+		}
+		return result.toString();
+	}
+	/**
+	 * Decodes a response body while it is read from the connection.
+	 * 
+	 * @author agent
+	 *
+	 * @param <T>	the type of the decoded response
+	 */
+	private interface ResponseReader<T> {
+		/**
+		 * @param in		the response body, not to be closed
+		 * @return			the decoded response
+		 * @throws IOException
+		 */
+		T read(Reader in) throws IOException;
+	}
+	/**
+	 * Reads the response body as a string.
+	 */
+	private static final ResponseReader<String> STRING_READER = new ResponseReader<String>() {
+		public String read(Reader in) throws IOException {
+			return readAll(in);
+		}
+	};
+	/**
+	 * Tell the buffer queue that the API answered, so that the queued requests
+	 * are replayed without waiting for the end of the backoff.
+	 * The replay itself runs in the background.
 	 */
 	private void runBuffer() {
-		if (this.m_bufferingExecution && (this.m_cycles >= 10)) {
-			APIBatchExecution.sendAll();
-			this.m_cycles = 0;
+		if (this.m_bufferingExecution) {
+			APIBatchExecution.apiAvailable();
 		}
-		this.m_cycles++;
 	}
 	/**
-	 * Save the failed request to the stack.
+	 * Save the failed request to the retry queue. Nothing is saved if the buffering is
+	 * not active for this instance, which is the case of the instance that replays
+	 * the queue.
 	 * 
-	 * @param typeValue			the name of the method to call
+	 * @param method			the HTTP method of the request
 	 * @param restRequest		the request URI
 	 * @param pName				the name of the parameters to pass to the API
 	 * @param pValue			the value of the parameters to pass to the API
 	 */
-	private void pushFailedApi(String typeValue, String restRequest, String[] pName, String[] pValue) {
-		List<Object> toBatch = new ArrayList<Object>();
-		toBatch.add(typeValue);
-		toBatch.add(restRequest);
-		toBatch.add(pName);
-		toBatch.add(pValue);
+	private void pushFailedApi(PendingRequest.METHOD method, String restRequest, String[] pName, String[] pValue) {
+		if (! this.m_bufferingExecution) return;
+		String date = null;
 		try {
-			toBatch.add(setDate());
+			date = setDate();
 		} catch (IOException e) {
 			// IGNORE
 		}
-		APIBatchExecution.push(toBatch);
+		APIBatchExecution.push(new PendingRequest(method, restRequest, pName, pValue, date));
+	}
+	/**
+	 * Sets how the failed requests are replayed in the background. After a failed
+	 * replay, the next attempt waits <code>initialBackoff</code> milliseconds, doubled
+	 * at each consecutive failure up to <code>maxBackoff</code>, with a random jitter
+	 * of up to half the delay.
+	 * 
+	 * @param budget			the maximum number of requests replayed by one attempt
+	 * @param maxRate			the maximum number of replayed requests per second
+	 * @param initialBackoff	the delay after the first failure, in milliseconds
+	 * @param maxBackoff		the maximum delay, in milliseconds
+	 */
+	public static void setRetryPolicy(int budget, int maxRate, long initialBackoff, long maxBackoff) {
+		APIBatchExecution.setPolicy(budget, maxRate, initialBackoff, maxBackoff);
+	}
+	/**
+	 * Sets the number of threads that replay the failed requests, 1 by default.
+	 * With more threads, the requests are partitioned by system or node: the requests
+	 * to one resource are replayed in order, and the different resources at the same
+	 * time. The replay rate set by <code>setRetryPolicy</code> is shared by the threads.
+	 * 
+	 * @param workers		the number of threads
+	 */
+	public static void setRetryWorkers(int workers) {
+		APIBatchExecution.setWorkers(workers);
+	}
+	/**
+	 * Sets the limits of the queue of the failed requests. The default is to keep
+	 * 8192 requests in memory and drop the oldest ones when the queue is full.
+	 * The requests already queued are kept.
+	 * 
+	 * @param capacity		the number of requests kept in memory, rounded up to a power of two
+	 * @param overflow		what to do when the queue is full
+	 */
+	public static void setRetryQueue(int capacity, RetryQueue.OVERFLOW overflow) {
+		APIBatchExecution.setQueue(capacity, overflow);
+	}
+	/**
+	 * Returns the queue of the failed requests, e.g. to read its counters.
+	 * 
+	 * @return		the queue
+	 */
+	public static RetryQueue<?> getRetryQueue() {
+		return APIBatchExecution.getQueue();
+	}
+	/**
+	 * Keeps the failed requests in a write-ahead log in the given directory, so that
+	 * they are replayed after a restart. The requests left in the log by the previous
+	 * run are queued again at once. The log may also be set with the
+	 * SKYSQL_API_RETRYLOG system property. Only one log may be opened.
+	 * 
+	 * @param directory		the directory of the log, created if needed
+	 * @return				true if the log has been opened
+	 */
+	public static boolean setRetryLog(String directory) {
+		return APIBatchExecution.setLog(directory);
+	}
+	/**
+	 * Closes the write-ahead log of the failed requests, forcing its acknowledgements
+	 * to disk. The requests failed afterwards are only kept in memory. Called
+	 * when the JVM exits, if the log is open.
+	 */
+	public static void closeRetryLog() {
+		APIBatchExecution.closeLog();
+	}
+	/**
+	 * Returns the last-writer-wins compaction of the queued PUT requests, e.g. to read
+	 * its counters. Only the newest queued value of each (URI, field) pair is replayed.
+	 * 
+	 * @return		the compaction
+	 */
+	public static WriteCompaction getRetryCompaction() {
+		return APIBatchExecution.getCompaction();
+	}
+	/**
+	 * Returns the write-ahead log of the failed requests, e.g. to read its counters.
+	 * 
+	 * @return		the log, null if the failed requests are only kept in memory
+	 */
+	public static PendingRequestLog getRetryLog() {
+		return APIBatchExecution.getLog();
 	}
 
 
@@ -610,40 +1038,130 @@ public class MonAPI {
 
 	/**
 	 * "Singleton" to implement the API buffering mechanism.
+	 * The failed requests are replayed by a dedicated scheduler thread,
+	 * with exponential backoff while the API keeps failing.
 	 * 
 	 * @author Massimo Siani
 	 *
 	 */
 	private static class APIBatchExecution {
+		/** Default maximum number of requests replayed by one attempt. */
+		private final static int		DEFAULT_BUDGET = 200;
+		/** Default maximum number of replayed requests per second. */
+		private final static int		DEFAULT_MAX_RATE = 50;
+		/** Default delay after the first failure, in milliseconds. */
+		private final static long		DEFAULT_INITIAL_BACKOFF = 1000;
+		/** Default maximum delay between two attempts, in milliseconds. */
+		private final static long		DEFAULT_MAX_BACKOFF = 300000;
+		/** Default number of requests kept in memory. */
+		private final static int		DEFAULT_CAPACITY = 8192;
+		/**
+		 * The queue of the failed calls.
+		 */
+		private volatile RetryQueue<PendingRequest> queue =
+				new RetryQueue<PendingRequest>(DEFAULT_CAPACITY, RetryQueue.OVERFLOW.DROP_OLDEST, PendingRequest.CODEC);
 		/**
-		 * The "stack" contains the failed calls according to the following logic:
-		 * 		(java method, request URI, name of parameters, value of parameters).
+		 * The write-ahead log of the queued requests, null if they are only kept in memory.
 		 */
-		private List<List<Object>> stack = new ArrayList<List<Object>>();
+		private volatile PendingRequestLog log = null;
 		/**
-		 * Backup of the stack, for performing operations on the stack.
+		 * True once the hook that closes the log at exit is registered. Guarded by the instance.
 		 */
-		private List<List<Object>> stack_bkp = new ArrayList<List<Object>>();
+		private boolean shutdownHook = false;
+		/**
+		 * The newest queued value of every field written by a PUT.
+		 */
+		private final WriteCompaction compaction = new WriteCompaction();
+		/**
+		 * Removes the dropped requests from the log and from the compaction table.
+		 */
+		private final RetryQueue.DropListener<PendingRequest> dropListener = new RetryQueue.DropListener<PendingRequest>() {
+			public void dropped(PendingRequest request) {
+				compaction.dropped(request);
+				acknowledge(request);
+			}
+		};
+		/**
+		 * The requests taken from the queue but not replayed by the last attempt,
+		 * to be replayed first. Only used by the scheduler thread.
+		 */
+		private final List<PendingRequest> carry = new ArrayList<PendingRequest>();
+		/**
+		 * The size of <code>carry</code>, readable by every thread.
+		 */
+		private volatile int carrySize = 0;
 		/**
 		 * Set a new MonAPI instance that will not call the batch queue
 		 * 		(otherwise infinite loop).
 		 */
 		private MonAPI mapi = new MonAPI(false, 3);
+		/**
+		 * The thread that replays the queue.
+		 */
+		private final ScheduledExecutorService scheduler =
+				Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("MonAPI-retry"));
+		/**
+		 * Source of the backoff jitter. Only used by the scheduler thread.
+		 */
+		private final Random random = new Random();
+		/**
+		 * The next attempt, if scheduled and not started yet. Guarded by the instance.
+		 */
+		private ScheduledFuture<?> pending = null;
+		/**
+		 * Whether an attempt is running. Guarded by the instance.
+		 */
+		private boolean running = false;
+		/**
+		 * Consecutive failed attempts. Guarded by the instance.
+		 */
+		private int failures = 0;
+		/**
+		 * True while waiting for the end of a backoff.
+		 */
+		private volatile boolean backingOff = false;
+		private volatile int budget = DEFAULT_BUDGET;
+		private volatile int maxRate = DEFAULT_MAX_RATE;
+		private volatile long initialBackoff = DEFAULT_INITIAL_BACKOFF;
+		private volatile long maxBackoff = DEFAULT_MAX_BACKOFF;
+		/**
+		 * The number of workers that replay the requests.
+		 */
+		private volatile int workers = 1;
+		/**
+		 * The workers, null if the requests are replayed by the scheduler thread. Guarded by the instance.
+		 */
+		private volatile ExecutorService replayExecutor = null;
+		/**
+		 * Set by the first failure of an attempt, to stop the other workers.
+		 */
+		private volatile boolean stop = false;
+		/**
+		 * The resource part of the URIs.
+		 */
+		private static final Pattern RESOURCE_PATTERN = Pattern.compile("/?(system/\\d+(/node/\\d+)?)");
 		/**
 		 * Instance of the present class. To be instantiate only once, thus
 		 * keep it private.
 		 */
 		private static volatile APIBatchExecution INSTANCE = null;
 		/**
-		 * Constructor, to be kept private (only one stack may exist).
+		 * Constructor, to be kept private (only one queue may exist).
 		 */
-		private APIBatchExecution() {}
+		private APIBatchExecution() {
+			queue.setDropListener(dropListener);
+		}
 		/**
 		 * Constructor wrapper, for double-checking the INSTANCE uniqueness.
 		 */
 		private synchronized static void APIBatchExecutionHolder() { 
-			if (INSTANCE == null)
+			if (INSTANCE == null) {
 				INSTANCE = new APIBatchExecution();
+				String directory = System.getProperty("SKYSQL_API_RETRYLOG");
+				if (directory != null && ! directory.isEmpty()) {
+					setLog(directory);
+				}
+			}
 		}
 		/**
 		 * Instantiates the unique instance of this class.
@@ -656,82 +1174,471 @@ public class MonAPI {
 			return INSTANCE;
 		}
 		/**
-		 * Transfers the stack into its backup, and clears the stack.
+		 * Sets the replay policy.
+		 * 
+		 * @see MonAPI#setRetryPolicy(int, int, long, long)
+		 */
+		public static void setPolicy(int budget, int maxRate, long initialBackoff, long maxBackoff) {
+			APIBatchExecution batch = getInstance();
+			batch.budget = budget > 0 ? budget : DEFAULT_BUDGET;
+			batch.maxRate = maxRate > 0 ? maxRate : DEFAULT_MAX_RATE;
+			batch.initialBackoff = initialBackoff > 0 ? initialBackoff : DEFAULT_INITIAL_BACKOFF;
+			batch.maxBackoff = Math.max(maxBackoff, batch.initialBackoff);
+		}
+		/**
+		 * Sets the number of workers that replay the requests.
+		 * 
+		 * @see MonAPI#setRetryWorkers(int)
+		 */
+		public static void setWorkers(int workers) {
+			APIBatchExecution batch = getInstance();
+			ExecutorService old;
+			synchronized (batch) {
+				workers = Math.max(workers, 1);
+				old = batch.replayExecutor;
+				batch.workers = workers;
+				batch.replayExecutor = workers > 1
+						? Executors.newFixedThreadPool(workers, new DaemonThreadFactory("MonAPI-replay"))
+						: null;
+			}
+			// the running attempt, if any, completes its partitions
+			if (old != null) old.shutdown();
+		}
+		/**
+		 * Replaces the queue with a new one with the given limits. The queued
+		 * requests are moved to the new queue.
+		 * 
+		 * @param capacity		the number of requests kept in memory
+		 * @param overflow		the overflow policy
+		 */
+		public static void setQueue(int capacity, RetryQueue.OVERFLOW overflow) {
+			APIBatchExecution batch = getInstance();
+			RetryQueue<PendingRequest> newQueue = new RetryQueue<PendingRequest>(capacity, overflow, PendingRequest.CODEC);
+			newQueue.setDropListener(batch.dropListener);
+			RetryQueue<PendingRequest> oldQueue = batch.queue;
+			batch.queue = newQueue;
+			PendingRequest request;
+			while ((request = oldQueue.poll()) != null) {
+				newQueue.offer(request);
+			}
+		}
+		/**
+		 * @return the queue of the failed requests
 		 */
-		private void backupBatchQueue() {
-			getInstance().stack_bkp.addAll(getInstance().stack);
-			getInstance().stack.clear();
+		public static RetryQueue<?> getQueue() {
+			return getInstance().queue;
 		}
 		/**
-		 * Returns the whole stack list.
-		 * @return
+		 * Opens the write-ahead log and queues the requests it holds.
+		 * 
+		 * @param directory		the directory of the log
+		 * @return				true if the log has been opened
 		 */
-		//		public static List<List<Object>> getExecutionStack() {
-		//			return getInstance().stack;
-		//		}
+		public static boolean setLog(String directory) {
+			APIBatchExecution batch = getInstance();
+			PendingRequestLog newLog;
+			synchronized (batch) {
+				if (batch.log != null) {
+					Logging.error("The retry log is already open: " + batch.log);
+					return false;
+				}
+				try {
+					newLog = new PendingRequestLog(new File(directory));
+				} catch (IOException e) {
+					Logging.error("Cannot open the retry log in " + directory + ": " + e.getMessage());
+					return false;
+				}
+				batch.log = newLog;
+				if (! batch.shutdownHook) {
+					Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+						public void run() {
+							closeLog();
+						}
+					}, "MonAPI-retrylog"));
+					batch.shutdownHook = true;
+				}
+			}
+			for (PendingRequest request : newLog.getRecovered()) {
+				batch.compaction.queued(request);
+				batch.queue.offer(request);
+			}
+			synchronized (batch) {
+				if (! batch.isEmpty()) batch.schedule(0);
+			}
+			return true;
+		}
 		/**
-		 * Pushes an element, on a LIFO.
+		 * Closes the write-ahead log, if open.
+		 */
+		public static void closeLog() {
+			APIBatchExecution batch = INSTANCE;
+			if (batch == null) return;
+			PendingRequestLog oldLog;
+			synchronized (batch) {
+				oldLog = batch.log;
+				batch.log = null;
+			}
+			if (oldLog != null) oldLog.close();
+		}
+		/**
+		 * @return the write-ahead log, may be null
+		 */
+		public static PendingRequestLog getLog() {
+			return getInstance().log;
+		}
+		/**
+		 * @return the compaction of the queued PUT requests
+		 */
+		public static WriteCompaction getCompaction() {
+			return getInstance().compaction;
+		}
+		/**
+		 * @return the time of the compaction clock, 0 if nothing has been queued yet
+		 */
+		public static long now() {
+			APIBatchExecution batch = INSTANCE;
+			return batch == null ? 0 : batch.compaction.now();
+		}
+		/**
+		 * A PUT request has been sent live: the values of its fields queued before
+		 * it started need not be replayed.
+		 * 
+		 * @param restRequest	the request URI
+		 * @param pName			the names of the parameters
+		 * @param started		the time returned by <code>now</code> when the request started
+		 */
+		public static void written(String restRequest, String[] pName, long started) {
+			APIBatchExecution batch = INSTANCE;
+			if (batch != null) batch.compaction.written(restRequest, pName, started);
+		}
+		/**
+		 * Pushes an element, and schedules a replay attempt after the
+		 * current backoff. Never blocks on the replay.
+		 * 
 		 * @param toBuffer
-		 * @return true if succeeds or false on errors
+		 * @return true if succeeds or false if the request has been dropped
+		 */
+		public static boolean push(PendingRequest toBuffer) {
+			APIBatchExecution batch = getInstance();
+			PendingRequestLog currentLog = batch.log;
+			if (currentLog != null) {
+				try {
+					toBuffer = currentLog.append(toBuffer);
+				} catch (IOException e) {
+					Logging.error("Cannot write the failed request to the retry log: " + e.getMessage());
+				}
+			}
+			// before the offer: the replay must see it as the newest writer. If the queue
+			// drops it instead, the drop listener gives the fields back to the older writers
+			batch.compaction.queued(toBuffer);
+			boolean result = batch.queue.offer(toBuffer);
+			synchronized (batch) {
+				batch.schedule(batch.nextDelay());
+			}
+			return result;
+		}
+		/**
+		 * @return true if there is nothing to replay
+		 */
+		private boolean isEmpty() {
+			return carrySize == 0 && queue.isEmpty();
+		}
+		/**
+		 * The API answered a request: if the replay is waiting for the end of
+		 * a backoff, start it now.
+		 */
+		public static void apiAvailable() {
+			APIBatchExecution batch = INSTANCE;
+			if (batch == null || ! batch.backingOff) return;
+			synchronized (batch) {
+				batch.failures = 0;
+				batch.backingOff = false;
+				if (batch.pending != null && batch.pending.cancel(false)) {
+					batch.pending = null;
+				}
+				if (! batch.isEmpty()) {
+					batch.schedule(0);
+				}
+			}
+		}
+		/**
+		 * Schedules an attempt, unless one is already scheduled or running.
+		 * Must be called holding the instance lock.
+		 * 
+		 * @param delay		the delay in milliseconds
+		 */
+		private void schedule(long delay) {
+			if (running || pending != null) return;
+			pending = scheduler.schedule(new Runnable() {
+				public void run() {
+					attempt();
+				}
+			}, delay, TimeUnit.MILLISECONDS);
+		}
+		/**
+		 * The delay before the next attempt: zero if the last attempt succeeded,
+		 * otherwise the exponential backoff with jitter.
+		 * Must be called holding the instance lock.
+		 * 
+		 * @return		the delay in milliseconds
+		 */
+		private long nextDelay() {
+			if (failures == 0) return initialBackoff;
+			long delay = initialBackoff << Math.min(failures - 1, 30);
+			if (delay <= 0 || delay > maxBackoff) delay = maxBackoff;
+			return delay / 2 + (long) (random.nextDouble() * (delay / 2));
+		}
+		/**
+		 * Replays at most <code>budget</code> requests, at most <code>maxRate</code>
+		 * per second. The first failure stops the attempt and starts the backoff;
+		 * the requests not replayed are kept to be replayed first by the next attempt.
+		 * With more than one worker, the requests are partitioned by resource: the
+		 * requests to one system or node are replayed in order by one worker, while
+		 * the other resources are replayed by the other workers at the same time.
 		 */
-		public synchronized static boolean push(List<Object> toBuffer) {
+		private void attempt() {
+			synchronized (this) {
+				pending = null;
+				running = true;
+			}
+			RetryQueue<PendingRequest> source = queue;
+			List<PendingRequest> batchCmds = new ArrayList<PendingRequest>(carry);
+			carry.clear();
+			List<Replay> replays = null;
+			long spacing = 0;
+			int replayed = 0;
+			int compacted = 0;
+			int rejected = 0;
+			boolean failed = false;
 			try {
-				getInstance().stack.add(toBuffer);
-			} catch (Exception e) {
-				return false;
+				PendingRequest next;
+				while (batchCmds.size() < budget && (next = source.poll()) != null) {
+					batchCmds.add(next);
+				}
+				ExecutorService executor = replayExecutor;
+				int partitions = executor == null ? 1 : workers;
+				// the rate is shared by the workers
+				spacing = 1000L * partitions / maxRate;
+				replays = partition(batchCmds, partitions, spacing);
+				stop = false;
+				Logging.info("START BUFFERED REQUESTS: " + batchCmds.size() + " queued requests, "
+						+ replays.size() + " partitions.");
+				if (replays.size() == 1) {
+					replays.get(0).run();
+				} else {
+					runAll(executor, replays);
+				}
+			} catch (RuntimeException e) {
+				Logging.error("Buffered request replay failed: " + e);
+				failed = true;
+			} finally {
+				// whatever happened, keep the requests not replayed and schedule the next attempt
+				if (replays == null) {
+					carry.addAll(batchCmds);
+				} else {
+					for (Replay replay : replays) {
+						carry.addAll(replay.requests.subList(replay.done, replay.requests.size()));
+						replayed += replay.replayed;
+						compacted += replay.compacted;
+						rejected += replay.rejected;
+						failed |= replay.failed;
+					}
+				}
+				carrySize = carry.size();
+				source.markReplayed(replayed);
+				synchronized (this) {
+					running = false;
+					if (failed) {
+						failures++;
+						backingOff = true;
+					} else {
+						failures = 0;
+					}
+					if (! isEmpty()) {
+						schedule(failed ? nextDelay() : spacing);
+					}
+				}
 			}
-			return true;
+			Logging.info("STOP BUFFERED REQUESTS: " + replayed + " replayed, " + compacted + " superseded, "
+					+ rejected + " rejected" + (failed ? ", next attempt after backoff." : ".") + " " + source);
+		}
+		/**
+		 * Splits the requests by resource, keeping their order. One partition
+		 * is returned if there is one worker.
+		 * 
+		 * @param requests		the requests
+		 * @param partitions	the number of workers
+		 * @param spacing		the pause between two requests of a worker, in milliseconds
+		 * @return				the non-empty partitions
+		 */
+		private List<Replay> partition(List<PendingRequest> requests, int partitions, long spacing) {
+			List<Replay> replays = new ArrayList<Replay>(partitions);
+			if (partitions <= 1) {
+				Replay replay = new Replay(spacing);
+				replay.requests.addAll(requests);
+				replays.add(replay);
+				return replays;
+			}
+			Replay[] byIndex = new Replay[partitions];
+			for (PendingRequest request : requests) {
+				int index = (resource(request).hashCode() & Integer.MAX_VALUE) % partitions;
+				if (byIndex[index] == null) {
+					byIndex[index] = new Replay(spacing);
+					replays.add(byIndex[index]);
+				}
+				byIndex[index].requests.add(request);
+			}
+			if (replays.isEmpty()) replays.add(new Replay(spacing));
+			return replays;
+		}
+		/**
+		 * Runs the partitions on the workers and waits for all of them.
+		 * 
+		 * @param executor		the workers
+		 * @param replays		the partitions
+		 */
+		private void runAll(ExecutorService executor, List<Replay> replays) {
+			List<Future<?>> futures = new ArrayList<Future<?>>(replays.size());
+			for (Replay replay : replays) {
+				try {
+					futures.add(executor.submit(replay));
+				} catch (RejectedExecutionException e) {
+					// the workers are being replaced: replay here
+					replay.run();
+				}
+			}
+			boolean interrupted = false;
+			for (Future<?> future : futures) {
+				while (true) {
+					try {
+						future.get();
+						break;
+					} catch (InterruptedException e) {
+						// let the workers stop at their next request
+						stop = true;
+						interrupted = true;
+					} catch (ExecutionException e) {
+						Logging.error("Buffered request replay failed: " + e.getCause());
+						break;
+					}
+				}
+			}
+			if (interrupted) Thread.currentThread().interrupt();
+		}
+		/**
+		 * The resource a request writes to: the system or node of the URI, or of the
+		 * systemid and nodeid parameters for the requests like <code>monitordata</code>.
+		 * 
+		 * @param request		the request
+		 * @return				the resource, e.g. system/1/node/2
+		 */
+		static String resource(PendingRequest request) {
+			Matcher matcher = RESOURCE_PATTERN.matcher(request.getUri());
+			if (matcher.lookingAt()) return matcher.group(1);
+			String[] names = request.getNames();
+			String[] values = request.getValues();
+			if (names != null && values != null) {
+				String system = null;
+				String node = null;
+				for (int i=0; i<names.length && i<values.length; i++) {
+					if ("systemid".equals(names[i])) system = values[i];
+					else if ("nodeid".equals(names[i])) node = values[i];
+				}
+				if (system != null) {
+					return "system/" + system + (node == null || "0".equals(node) ? "" : "/node/" + node);
+				}
+			}
+			return request.getUri();
 		}
 		/**
-		 * Pops on a LIFO.
-		 * @return
-		 */
-		//		public synchronized static List<Object> pop() {
-		//			try {
-		//				int lastPos = getInstance().stack.size() -1;
-		//				List<Object> result = getInstance().stack.get(lastPos);
-		//				getInstance().stack.remove(lastPos);
-		//				return result;
-		//			} catch (Exception e) {
-		//				return null;
-		//			}
-		//		}
-		/**
-		 * Executes the buffer queue.
-		 */
-		public synchronized static void sendAll() {
-			Method method;
-			Class<? extends Object> classRequest;
-			Class<? extends Object> classOne, classTwo;
-			getInstance().backupBatchQueue();
-			Logging.info("START BUFFERED REQUESTS: " + getInstance().stack_bkp.size() + " queued requests.");
-			for (List<Object> batchCmd : getInstance().stack_bkp) {
+		 * A partition of the requests of an attempt, replayed in order by one thread.
+		 * The counters are read once the replay has ended.
+		 * 
+		 * @author agent
+		 *
+		 */
+		private class Replay implements Runnable {
+			private final List<PendingRequest> requests = new ArrayList<PendingRequest>();
+			private final long spacing;
+			private int done = 0;
+			private int replayed = 0;
+			private int compacted = 0;
+			private int rejected = 0;
+			private boolean failed = false;
+
+			private Replay(long spacing) {
+				this.spacing = spacing;
+			}
+
+			public void run() {
 				try {
-					classRequest = batchCmd.get(1).getClass();
-					classOne = batchCmd.get(2).getClass(); classOne =  String[].class;
-					classTwo = batchCmd.get(3).getClass(); classTwo =  String[].class;
-					method = getInstance().mapi.getClass().getDeclaredMethod((String) batchCmd.get(0),
-							classRequest, classOne, classTwo);
-					method.invoke(getInstance().mapi,
-							batchCmd.get(1), batchCmd.get(2), batchCmd.get(3));
-				} catch (ClassCastException e) {
-					Logging.debug("Method " + (String) batchCmd.get(0)
-							+ ": the parameters must be strings or extensions, got instead "
-							+ batchCmd.get(1).getClass().getSimpleName() + ", " 
-							+ batchCmd.get(2).getClass().getSimpleName() + ", "
-							+ batchCmd.get(3).getClass().getSimpleName());
-				} catch (NoSuchMethodException e) {
-					Logging.debug("No method " + (String) batchCmd.get(0)
-							+ " with parameters of type "
-							+ batchCmd.get(1).getClass().getSimpleName() + ", "
-							+ batchCmd.get(2).getClass().getSimpleName() + ", "
-							+ batchCmd.get(3).getClass().getSimpleName());
-				} catch (Exception e) {
-					// ignore
+					for (PendingRequest batchCmd : requests) {
+						if (stop) break;
+						PendingRequest toSend = compaction.compact(batchCmd);
+						if (toSend != null) {
+							if (replayed > 0 && spacing > 0) {
+								Thread.sleep(spacing);
+							}
+							REPLAY outcome = replay(toSend);
+							if (outcome == REPLAY.FAILED) {
+								failed = true;
+								// the API is down for the other workers too
+								stop = true;
+								break;
+							} else if (outcome == REPLAY.REJECTED) {
+								// sending it again cannot succeed: drop it
+								rejected++;
+							} else {
+								replayed++;
+							}
+						} else {
+							compacted++;
+						}
+						compaction.done(batchCmd);
+						acknowledge(batchCmd);
+						done++;
+					}
+				} catch (InterruptedException e) {
+					failed = true;
+					stop = true;
+					Thread.currentThread().interrupt();
 				}
 			}
-			getInstance().stack_bkp.clear();
-			Logging.info("STOP BUFFERED REQUESTS");
+		}
+		/**
+		 * The outcome of the replay of a request.
+		 */
+		private enum REPLAY {
+			SENT,
+			REJECTED,
+			FAILED;
+		}
+		/**
+		 * Removes a replayed or dropped request from the log.
+		 * 
+		 * @param request		the request
+		 */
+		private void acknowledge(PendingRequest request) {
+			PendingRequestLog currentLog = log;
+			if (currentLog != null) currentLog.acknowledge(request);
+		}
+		/**
+		 * Executes one buffered request.
+		 * 
+		 * @param request		the request
+		 * @return				whether the API accepted the request, rejected it for good,
+		 * 						or failed and the request must be replayed again
+		 */
+		private REPLAY replay(PendingRequest request) {
+			try {
+				mapi.restWrite(request.getMethod(), request.getUri(), request.getNames(), request.getValues());
+				return REPLAY.SENT;
+			} catch (RejectedException e) {
+				Logging.error("The API rejected " + request + ", dropped: " + e.getMessage());
+				return REPLAY.REJECTED;
+			} catch (Exception e) {
+				return REPLAY.FAILED;
+			}
 		}
 	}
-}
\ No newline at end of file
+}
@@ -22,10 +22,18 @@
 
 package com.skysql.java;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -40,10 +48,40 @@ import java.util.regex.Pattern;
  *
  */
 public class MonData {
+	/**
+	 * The timer that refreshes the caches in the background.
+	 */
+	private static final ScheduledExecutorService	REFRESH_TIMER =
+			Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("MonData-refresh"));
+	/**
+	 * How long the cached node states are used before asking the API if they
+	 * changed, in milliseconds.
+	 */
+	private static final long						NODE_STATES_TTL = 60000;
+	/**
+	 * How long the monitor classes checked for a system are used by the other
+	 * systems sharing the cache without asking the API again, in milliseconds.
+	 */
+	private static final long						SHARED_MONITORS_TTL = 5000;
+	/** The system type, when it is not given. */
+	static final String								DEFAULT_SYSTEM_TYPE = "galera";
 	private int							m_systemID;
-	private MonAPI						m_api;
-	private String						m_systemType;
-	private GsonLatestObservations 		m_dataChanged;
+	private final MonAPI				m_api;
+	private final String				m_systemType;
+	private final GsonLatestObservations	m_dataChanged;
+	/** True if the cache is shared with the other systems of a <code>MultiSystemMonData</code>. */
+	private final boolean				m_sharedCache;
+	/** The nodes of the system in the cache when the last change has been reported. */
+	private volatile GsonNode			m_reportedNodes;
+	/** The monitor classes in the cache when the last change has been reported. */
+	private volatile GsonMonitorClasses	m_reportedMonitors;
+	private volatile MonitorDataBatcher	m_monitorBatch;
+	/** The scheduled background refresh, null if the caches are refreshed by the callers. */
+	private volatile ScheduledFuture<?>	m_refresh;
+	/** Set by the background refresh when the nodes change, until <code>getProvisionedNodes</code>. */
+	private final AtomicBoolean			m_nodesChanged = new AtomicBoolean();
+	/** Set by the background refresh when the monitors change, until <code>saveMonitorChanges</code>. */
+	private final AtomicBoolean			m_monitorsChanged = new AtomicBoolean();
 	
 	/**
 	 * Constructor for the Monitor data class.
@@ -51,11 +89,34 @@ public class MonData {
 	 * @param systemID	The System ID being monitored
 	 */
 	public MonData(int systemID)
+	{
+		this(systemID, DEFAULT_SYSTEM_TYPE, new MonAPI(), new GsonLatestObservations(), false);
+		String snapshots = System.getProperty("SKYSQL_CACHE_SNAPSHOT");
+		if (snapshots != null && ! snapshots.isEmpty()) {
+			setCacheSnapshot(snapshots);
+		}
+	}
+	/**
+	 * Constructor for a system served by a <code>MultiSystemMonData</code>,
+	 * over its API client and its cache.
+	 * 
+	 * @param systemID		The System ID being monitored
+	 * @param systemType	The type of the system
+	 * @param api			The API client
+	 * @param cache			The cache of the systems of the same type
+	 * @param sharedCache	True if the cache is shared with other systems
+	 */
+	MonData(int systemID, String systemType, MonAPI api, GsonLatestObservations cache, boolean sharedCache)
 	{
 		m_systemID = systemID;
-		m_api = new MonAPI();
-		m_systemType = "galera";
-		m_dataChanged = new GsonLatestObservations();
+		m_api = api;
+		m_systemType = systemType;
+		m_dataChanged = cache;
+		m_sharedCache = sharedCache;
+		m_monitorBatch = new MonitorDataBatcher(m_api);
+		// the monitors already in a shared cache are reported as a change at the first call
+		GsonMonitorClasses monitors = cache.getAllMonitorClasses();
+		m_reportedMonitors = monitors == null || monitors.getMonitorClass(0) == null ? monitors : null;
 	}
 	/**
 	 * Constructor used when the system id is not known.
@@ -73,8 +134,7 @@ public class MonData {
 	 * @return					the Java object
 	 */
 	private <T> T getObjectFromAPI(String apiRequest, Class<T> objectClass) {
-		String getJson = m_api.getReturnedJson(apiRequest, null, null);
-		T object = GsonManager.fromJson(getJson, objectClass);
+		T object = m_api.getReturnedObject(apiRequest, null, null, null, objectClass);
 		return object;
 	}
 	/**
@@ -87,8 +147,7 @@ public class MonData {
 	 * @return					the Java object
 	 */
 	private <T> T getObjectFromAPI(String apiRequest, Class<T> objectClass, String lastUpdate) {
-		String getJson = m_api.getReturnedJson(apiRequest, null, null, lastUpdate);
-		T object = GsonManager.fromJson(getJson, objectClass);
+		T object = m_api.getReturnedObject(apiRequest, null, null, lastUpdate, objectClass);
 		return object;
 	}
 	
@@ -103,11 +162,96 @@ public class MonData {
 	 * @return					the Java object
 	 */
 	private <T> T getObjectFromAPI(String apiRequest, String[] pName, String[] pValue, Class<T> objectClass) {
-		String getJson = m_api.getReturnedJson(apiRequest, pName, pValue);
-		T object = GsonManager.fromJson(getJson, objectClass);
+		T object = m_api.getReturnedObject(apiRequest, pName, pValue, null, objectClass);
 		return object;
 	}
 	
+	/**
+	 * Persist the cached nodes, monitor classes and node states in a snapshot file of the given
+	 * directory, one file per system. The file left by the previous run is loaded
+	 * at once, so that the Monitor may start without waiting for the API; its
+	 * update dates are sent in the If-Modified-Since header, and the API is only
+	 * asked for what changed since. The directory may also be set with the
+	 * SKYSQL_CACHE_SNAPSHOT system property.
+	 * 
+	 * A cache shared by a <code>MultiSystemMonData</code> is persisted by it
+	 * instead, and this method returns false.
+	 * 
+	 * @param directory		the directory of the snapshot files, created if needed
+	 * @return				true if the cache has been loaded from a previous snapshot
+	 */
+	public boolean setCacheSnapshot(String directory) {
+		if (m_sharedCache) {
+			Logging.warn("The cache of system " + m_systemID + " is shared: its snapshot is set by MultiSystemMonData");
+			return false;
+		}
+		File dir = new File(directory);
+		if (! dir.isDirectory() && ! dir.mkdirs()) {
+			Logging.error("Cannot create the cache snapshot directory " + directory);
+			return false;
+		}
+		boolean loaded = m_dataChanged.setSnapshotFile(new File(dir, "cache-system-" + m_systemID + ".json.gz"));
+		if (loaded) Logging.info("Cached data of system " + m_systemID + " loaded from " + directory);
+		return loaded;
+	}
+	/**
+	 * Refresh the cached nodes, monitor classes and node states in the background, every
+	 * <code>period</code> milliseconds, starting now. The API is asked for the
+	 * changes only, with If-Modified-Since. Afterwards <code>getProvisionedNodes</code>
+	 * and <code>saveMonitorChanges</code> do not call the API any more: they
+	 * return at once, telling whether the background refresh has changed the cache
+	 * since their last call, and the readers keep getting the last good data
+	 * while a refresh is running or if it fails.
+	 * 
+	 * @param period		the time between two refreshes, in milliseconds
+	 */
+	public synchronized void startCacheRefresh(long period) {
+		stopCacheRefresh();
+		m_refresh = REFRESH_TIMER.scheduleWithFixedDelay(new Runnable() {
+			public void run() {
+				refreshCaches();
+			}
+		}, 0, period, TimeUnit.MILLISECONDS);
+	}
+	/**
+	 * Stop the background refresh: <code>getProvisionedNodes</code> and
+	 * <code>saveMonitorChanges</code> call the API again. The pending changes
+	 * of the cache snapshot, if any, are written.
+	 */
+	public synchronized void stopCacheRefresh() {
+		if (m_refresh != null) {
+			m_refresh.cancel(false);
+			m_refresh = null;
+		}
+		m_dataChanged.flushSnapshot();
+	}
+	/**
+	 * @return true if the caches are refreshed in the background
+	 */
+	public boolean isCacheRefreshing() {
+		return m_refresh != null;
+	}
+	/**
+	 * One background refresh. The errors are logged, and the cache is left as it was.
+	 */
+	private void refreshCaches() {
+		try {
+			if (refreshProvisionedNodes()) m_nodesChanged.set(true);
+		} catch (RuntimeException e) {
+			Logging.error("Cannot refresh the nodes of system " + m_systemID + ": " + e);
+		}
+		try {
+			if (refreshMonitorClasses()) m_monitorsChanged.set(true);
+		} catch (RuntimeException e) {
+			Logging.error("Cannot refresh the monitor classes of " + m_systemType + ": " + e);
+		}
+		try {
+			refreshNodeStates();
+		} catch (RuntimeException e) {
+			Logging.error("Cannot refresh the node states of " + m_systemType + ": " + e);
+		}
+	}
+	
 	/**
 	 * Return the Node object that the current instance stored in the cache.
 	 * 
@@ -227,35 +371,58 @@ public class MonData {
 	 * the updated objects are saved in place of the older ones. If this happens,
 	 * a return value of true is returned.
 	 * 
+	 * If the cache is refreshed in the background, returns at once.
+	 * @see <code>startCacheRefresh</code>
+	 * 
 	 * @return		true if the objects have been updated, false otherwise
 	 */
 	public boolean getProvisionedNodes() {
-		Iterator<Integer> nodeIt = getNodeList().iterator();
-		boolean isChanged = true;
-		while (nodeIt.hasNext()) {
-			Integer nodeID = nodeIt.next();
-			String now = m_dataChanged.getNodeUpdateDate(m_systemID, nodeID);
-			GsonProvisionedNode gsonProvisionedNode = getObjectFromAPI("provisionednode", GsonProvisionedNode.class, now);
-			isChanged = (gsonProvisionedNode == null || gsonProvisionedNode.getProvisionedNodes() == null
-					|| gsonProvisionedNode.getProvisionedNodes().isEmpty() ? false : true);
-			if (gsonProvisionedNode != null && gsonProvisionedNode.getProvisionedNodes() != null &&
-					gsonProvisionedNode.getProvisionedNodes().isEmpty()) {
-				m_dataChanged.clearAllNodes(m_systemID);
-			}
-			if (isChanged) {
-				m_dataChanged.clearAllNodes(m_systemID);
-				Iterator<GsonProvisionedNode.ProvisionedNodes> it = gsonProvisionedNode.getProvisionedNodes().iterator();
-				while (it.hasNext()) {
-					GsonProvisionedNode.ProvisionedNodes provisionedNode = it.next();
-					String ser = "{ \"node\": " + GsonManager.toJson(provisionedNode) + "}";
-					GsonNode gsonNode = GsonManager.fromJson(ser, GsonNode.class);
-					m_dataChanged.setLastNode(gsonNode);
-				}
-				break;
-			}
-		}
+		if (isCacheRefreshing()) return m_nodesChanged.getAndSet(false);
+		return refreshProvisionedNodes();
+	}
+	/**
+	 * Fetch the provisioned nodes if any of them changed since the last update,
+	 * and save them in the cache. This is a single request: the If-Modified-Since
+	 * date is the one of the least recently updated node of the system, so that
+	 * a change to any node, or a new node, is returned.
+	 * 
+	 * @return		true if the nodes of the system in the cache have changed
+	 * 				since the last call, false otherwise
+	 */
+	private boolean refreshProvisionedNodes() {
+		fetchProvisionedNodes();
+		// the nodes may also have been fetched by another system sharing the cache
+		GsonNode nodes = m_dataChanged.getAllNodes(m_systemID);
+		boolean isChanged = nodes != m_reportedNodes;
+		m_reportedNodes = nodes;
 		return isChanged;
 	}
+	/**
+	 * Fetch the provisioned nodes if any of them changed since the last update,
+	 * and save them in the cache.
+	 */
+	private void fetchProvisionedNodes() {
+		String lastUpdate = m_dataChanged.getAllNodesUpdateDate(m_systemID);
+		GsonProvisionedNode gsonProvisionedNode = getObjectFromAPI("provisionednode", GsonProvisionedNode.class, lastUpdate);
+		if (gsonProvisionedNode == null || gsonProvisionedNode.getProvisionedNodes() == null) return;
+		if (gsonProvisionedNode.getProvisionedNodes().isEmpty()) {
+			m_dataChanged.clearAllNodes(m_systemID);
+			return;
+		}
+		List<GsonNode.Nodes> systemNodes = new ArrayList<GsonNode.Nodes>();
+		List<GsonNode.Nodes> otherNodes = new ArrayList<GsonNode.Nodes>();
+		Iterator<GsonProvisionedNode.ProvisionedNodes> it = gsonProvisionedNode.getProvisionedNodes().iterator();
+		while (it.hasNext()) {
+			GsonProvisionedNode.ProvisionedNodes provisionedNode = it.next();
+			if (provisionedNode == null) continue;
+			GsonNode.Nodes node = provisionedNode.toNode();
+			if (node.getSystemId() == m_systemID) systemNodes.add(node);
+			else otherNodes.add(node);
+		}
+		// swap the nodes of the system at once, so that the other threads never see a partial list
+		m_dataChanged.setAllNodes(m_systemID, systemNodes);
+		if (! otherNodes.isEmpty()) m_dataChanged.setLastNode(new GsonNode(otherNodes));
+	}
 	/**
 	 * Return the list of Node id's to Monitor.
 	 * 
@@ -409,22 +576,19 @@ public class MonData {
 	 */
 	public List<String> getNodeValidStates()
 	{
-		String apiRequest = "nodestate/" + m_systemType;
-		GsonNodeStates gsonNodeStates = getObjectFromAPI(apiRequest, GsonNodeStates.class);
-		if (gsonNodeStates == null) return null;
-		return gsonNodeStates.getDescriptionList();
+		GsonNodeStates.Index nodeStates = getNodeStatesCached();
+		return nodeStates == null ? null : nodeStates.getDescriptionList();
 	}
 	/**
 	 * Map a Node state string to a state id.
 	 * 
 	 * @param Name The name of the Node state
-	 * @return The Node State
+	 * @return The Node State, -1 if not found
 	 */
 	public int getNodeStateId(String Name)
 	{
-		String apiRequest = "nodestate/" + m_systemType;
-		GsonNodeStates gsonNodeStates = getObjectFromAPI(apiRequest, GsonNodeStates.class);
-		return gsonNodeStates == null ? null : gsonNodeStates.getIdFromState(Name);
+		GsonNodeStates.Index nodeStates = getNodeStatesCached();
+		return nodeStates == null ? -1 : nodeStates.getIdFromState(Name);
 	}
 	/**
 	 * Map a Node state id to a state string.
@@ -434,9 +598,42 @@ public class MonData {
 	 */
 	public String getNodeStateFromId(int stateId)
 	{
+		GsonNodeStates.Index nodeStates = getNodeStatesCached();
+		return nodeStates == null ? null : nodeStates.getStateFromId(stateId);
+	}
+	/**
+	 * Return the cached node states of the system type. They are fetched the
+	 * first time, and asked again to the API, with If-Modified-Since, once they
+	 * are older than <code>NODE_STATES_TTL</code>, unless the caches are
+	 * refreshed in the background.
+	 * 
+	 * @return		the node states, null if not available
+	 */
+	private GsonNodeStates.Index getNodeStatesCached() {
+		GsonNodeStates.Index nodeStates = m_dataChanged.getNodeStates(m_systemType);
+		if (nodeStates == null || (! isCacheRefreshing()
+				&& System.currentTimeMillis() - m_dataChanged.getNodeStatesCheckTime(m_systemType) > NODE_STATES_TTL)) {
+			refreshNodeStates();
+			nodeStates = m_dataChanged.getNodeStates(m_systemType);
+		}
+		return nodeStates;
+	}
+	/**
+	 * Fetch the node states of the system type if they changed since the last
+	 * update, and save them in the cache.
+	 * 
+	 * @return		true if the node states have changed, false otherwise
+	 */
+	private boolean refreshNodeStates() {
 		String apiRequest = "nodestate/" + m_systemType;
-		GsonNodeStates gsonNodeStates = getObjectFromAPI(apiRequest, GsonNodeStates.class);
-		return gsonNodeStates.getStateFromId(stateId);
+		String now = m_dataChanged.getNodeStatesUpdateDate(m_systemType);
+		GsonNodeStates gsonNodeStates = getObjectFromAPI(apiRequest, GsonNodeStates.class, now);
+		if (gsonNodeStates == null || gsonNodeStates.getNodeStates() == null) {
+			m_dataChanged.setNodeStatesChecked(m_systemType);
+			return false;
+		}
+		m_dataChanged.setNodeStates(m_systemType, gsonNodeStates);
+		return true;
 	}
 	/********************************************************
 	 * Monitor
@@ -445,16 +642,36 @@ public class MonData {
 	 * Find if the list of monitors has changed since the last time it has been retrieved.
 	 * If yes, the new list is saved in an appropriate instance.
 	 * 
+	 * If the cache is refreshed in the background, returns at once.
+	 * @see <code>startCacheRefresh</code>
+	 * 
 	 * @return		true if the list of monitors has changed, false otherwise
 	 */
 	public boolean saveMonitorChanges() {
-		String apiRequest = "monitorclass/" + m_systemType;
-		String now = m_dataChanged.getMonitorUpdateDate();
-		GsonMonitorClasses gsonMonitorClasses = getObjectFromAPI(apiRequest, GsonMonitorClasses.class, now);
-		boolean isChanged = (gsonMonitorClasses == null || gsonMonitorClasses.getMonitorClass(0) == null ? false : true);
-		if (isChanged) {
-			m_dataChanged.setLastMonitor(gsonMonitorClasses);
+		if (isCacheRefreshing()) return m_monitorsChanged.getAndSet(false);
+		return refreshMonitorClasses();
+	}
+	/**
+	 * Fetch the list of monitors if it changed since the last update, and save it in the cache.
+	 * 
+	 * @return		true if the list of monitors in the cache has changed since the
+	 * 				last call, false otherwise
+	 */
+	private boolean refreshMonitorClasses() {
+		if (! m_sharedCache
+				|| System.currentTimeMillis() - m_dataChanged.getMonitorCheckTime() > SHARED_MONITORS_TTL) {
+			String apiRequest = "monitorclass/" + m_systemType;
+			String now = m_dataChanged.getMonitorUpdateDate();
+			GsonMonitorClasses gsonMonitorClasses = getObjectFromAPI(apiRequest, GsonMonitorClasses.class, now);
+			m_dataChanged.setMonitorChecked();
+			if (gsonMonitorClasses != null && gsonMonitorClasses.getMonitorClass(0) != null) {
+				m_dataChanged.setLastMonitor(gsonMonitorClasses);
+			}
 		}
+		// the monitors may also have been fetched by another system of the same type
+		GsonMonitorClasses monitors = m_dataChanged.getAllMonitorClasses();
+		boolean isChanged = monitors != m_reportedMonitors;
+		m_reportedMonitors = monitors;
 		return isChanged;
 	}
 	/**
@@ -490,17 +707,8 @@ public class MonData {
 	 * @return			the Monitor id, or -1 if the key is not found
 	 */
 	private int getMonitorId (String key) {
-		int result = -1;
-		GsonMonitorClasses gsonMonitorClasses = getMonitorClassesCached();
-		Iterator<GsonMonitorClasses.MonitorClasses> it = gsonMonitorClasses.getMonitorClasses().iterator();
-		while (it.hasNext()) {
-			GsonMonitorClasses.MonitorClasses monitorClass = it.next();
-			if (monitorClass.getMonitor().equalsIgnoreCase(key)) {
-				result = monitorClass.getMonitorId();
-				break;
-			}
-		}
-		return result;
+		GsonMonitorClasses gsonMonitorClasses = m_dataChanged.getMonitorClassesByKey(key);
+		return gsonMonitorClasses == null ? -1 : gsonMonitorClasses.getMonitorClass(0).getMonitorId();
 	}
 	/**
 	 * Return the list of all available Monitor Id's for the given system type.
@@ -539,13 +747,12 @@ public class MonData {
 	 * @see <code>saveMonitorChanges</code> to store the Monitor metadata
 	 * in the local cache.
 	 * 
-	 * @return The Monitor interval in seconds
+	 * @return The Monitor interval in seconds, -1 if the Monitor is not found
 	 */
 	public int getMonitorClassInterval(String monitorKey)
 	{
-		int monitor_id = getMonitorId(monitorKey);
-		GsonMonitorClasses gsonMonitorClasses = getMonitorClassesCached(monitor_id);
-		return gsonMonitorClasses == null ? null : gsonMonitorClasses.getMonitorClass(0).getInterval();
+		GsonMonitorClasses gsonMonitorClasses = m_dataChanged.getMonitorClassesByKey(monitorKey);
+		return gsonMonitorClasses == null ? -1 : gsonMonitorClasses.getMonitorClass(0).getInterval();
 	}
 	/**
 	 * Fetch the id of a particular Monitor.
@@ -769,6 +976,51 @@ public class MonData {
 			return false;
 		}
 	}
+	/**
+	 * Update many nodes of the system at once. The changes of each node are sent
+	 * in one PUT request, and the requests of the nodes are sent concurrently, so
+	 * that updating the whole cluster takes about the time of one request, up to
+	 * the number of connections to the API. There is no bulk node update in the API.
+	 * A failed request may still be replayed later, if the requests are buffered.
+	 * 
+	 * @param batch		the changes
+	 * @return			the outcome for each node
+	 */
+	public NodeUpdateBatch.Result updateNodes(NodeUpdateBatch batch) {
+		List<Integer> nodeIDs = batch.getNodeIDs();
+		List<Future<String>> responses = new ArrayList<Future<String>>(nodeIDs.size());
+		for (Integer nodeID : nodeIDs) {
+			String apiRequest = "system/" + m_systemID + "/node/" + nodeID;
+			responses.add(m_api.updateValueAsync(apiRequest, batch.getNames(nodeID), batch.getValues(nodeID)));
+		}
+		NodeUpdateBatch.Result result = new NodeUpdateBatch.Result();
+		boolean interrupted = false;
+		for (int i=0; i<nodeIDs.size(); i++) {
+			int nodeID = nodeIDs.get(i);
+			if (interrupted) {
+				result.setFailed(nodeID, "interrupted");
+				continue;
+			}
+			try {
+				GsonUpdatedAPI gsonUpdatedAPI = GsonManager.fromJson(responses.get(i).get(), GsonUpdatedAPI.class);
+				if (gsonUpdatedAPI == null || gsonUpdatedAPI.getUpdateCount() == null) {
+					result.setFailed(nodeID, "no valid response from the API");
+				} else {
+					result.setUpdated(nodeID, gsonUpdatedAPI.getUpdateCount());
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				interrupted = true;
+				result.setFailed(nodeID, "interrupted");
+			} catch (ExecutionException e) {
+				result.setFailed(nodeID, String.valueOf(e.getCause()));
+			}
+		}
+		if (! result.isSuccess()) {
+			Logging.error("Failed to update Nodes " + result.getFailedNodes() + " of system " + m_systemID);
+		}
+		return result;
+	}
 	/********************************************************
 	 * Node State
 	 ********************************************************/
@@ -796,16 +1048,52 @@ public class MonData {
 	/**
 	 * Interface to record observed values for a system. This differs from the other 
 	 * entry points in that it passes the data onto the API.
+	 * The observations are queued and sent as <code>monitordata</code> bulk requests
+	 * for the system node, unless batching has been turned off by <code>setMonitorDataBatching</code>.
+	 * With batching, the return value only tells whether the observation has been queued:
+	 * a failure of the request that sends it later is not reported here. Turn batching
+	 * off to know whether each observation has been written.
 	 * 
 	 * @param systemID		The SystemID to update
 	 * @param monitorID		The MonitorID the value is associated with
 	 * @param observation	The observed value
-	 * @return True if the Monitor observation was written
+	 * @return True if the Monitor observation was written, or, with batching, queued to be written
 	 */
 	public boolean monitorData(int systemID, int monitorID, String observation)
 	{
+		MonitorDataBatcher batch = m_monitorBatch;
+		if (batch != null) {
+			return batch.add(systemID, MonitorDataBatcher.SYSTEM_NODE, monitorID, observation);
+		}
 		return m_api.MonitorValue(systemID, getMonitorKey(monitorID), observation);
 	}
+	/**
+	 * Set how the observations of <code>monitorData</code> are batched. A batch
+	 * is sent when it holds <code>maxBatch</code> observations or when its first
+	 * observation has waited <code>linger</code> milliseconds. A size of 1 or less
+	 * turns batching off, and every observation is sent by its own request.
+	 * 
+	 * @param maxBatch		the maximum number of observations in one request
+	 * @param linger		the maximum time, in milliseconds, an observation waits
+	 */
+	public void setMonitorDataBatching(int maxBatch, long linger) {
+		if (maxBatch <= 1) {
+			flushMonitorData();
+			m_monitorBatch = null;
+		} else if (m_monitorBatch == null) {
+			m_monitorBatch = new MonitorDataBatcher(m_api, maxBatch, linger);
+		} else {
+			m_monitorBatch.setLimits(maxBatch, linger);
+		}
+	}
+	/**
+	 * Send the queued observations now, e.g. at the end of a Monitor cycle
+	 * or before shutting down.
+	 */
+	public void flushMonitorData() {
+		MonitorDataBatcher batch = m_monitorBatch;
+		if (batch != null) batch.flush();
+	}
 	/**
 	 * Batch request to the API. Adds the current timestamp to the data being sent, despite
 	 * it is an optional parameter for the API.
@@ -825,23 +1113,9 @@ public class MonData {
 					+ monitorIDs.size() + " Monitor IDs, " + values.size() + " values.");
 			return false;
 		}
-		List<String> fi = new ArrayList<String>();
-		List<String> va = new ArrayList<String>();
-		fi.add("systemid");
-		va.add(Integer.toString(systemID));
-		fi.add("nodeid");
-		va.add(Integer.toString(nodeID));
-		fi.add("timestamp");
-		va.add(Long.toString((new Date()).getTime() / 1000));
-		for (int i=0; i<monitorIDs.size(); i++) {
-			fi.add("m[" + Integer.toString(i) + "]");
-			va.add(Integer.toString(monitorIDs.get(i)));
-			fi.add("v[" + Integer.toString(i) + "]");
-			va.add(values.get(i));
-		}
-		String[] fields = fi.toArray(new String[0]);
-		String[] parameters = va.toArray(new String[0]);
-		return m_api.bulkMonitorValue(apiRequest, fields, parameters);
+		String[][] parameters = MonitorDataBatcher.bulkParameters(systemID, nodeID,
+				(new Date()).getTime() / 1000, monitorIDs, values);
+		return m_api.bulkMonitorValue(apiRequest, parameters[0], parameters[1]);
 	}
 	/**
 	 * Batch request to the API. This method is not currently supported by the API.
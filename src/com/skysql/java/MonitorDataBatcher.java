@@ -0,0 +1,276 @@
+/*
+ * This file is distributed as part of the MariaDB Manager. It is free
+ * software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ *
+ * Copyright 2026 SkySQL Corporation Ab
+ *
+ * Author: agent
+ * Date: October 2026
+ */
+
+package com.skysql.java;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Collects single Monitor observations and sends them to the API
+ * as <code>monitordata</code> bulk requests.
+ * <p>
+ * The observations are grouped by system and node. A group is sent
+ * when it reaches the maximum size, when its first observation has waited
+ * for the linger time, or when the same Monitor is observed again (the API
+ * ignores multiple values for the same Monitor in one bulk request).
+ * The requests are sent through the asynchronous <code>MonAPI</code> calls,
+ * so that the caller never waits for the API.
+ *
+ * @author agent
+ *
+ */
+public class MonitorDataBatcher {
+	/** Default maximum number of observations in one bulk request. */
+	public final static int			DEFAULT_MAX_BATCH = 50;
+	/** Default time, in milliseconds, an observation may wait before being sent. */
+	public final static long		DEFAULT_LINGER = 1000;
+	/** The node ID of the system observations: the monitordata API records node 0 at the system level. */
+	public final static int			SYSTEM_NODE = 0;
+	/**
+	 * The timer that sends the batches that reached the linger time.
+	 */
+	private static final ScheduledExecutorService	LINGER_TIMER =
+			Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("MonitorData-linger"));
+	/**
+	 * The API instance used to send the requests.
+	 */
+	private final MonAPI						m_api;
+	/**
+	 * The maximum number of observations in one bulk request.
+	 */
+	private volatile int						m_maxBatch;
+	/**
+	 * The linger time, in milliseconds.
+	 */
+	private volatile long						m_linger;
+	/**
+	 * The (system ID/node ID, open batch) table. Guarded by this.
+	 */
+	private final Map<String, Batch>			m_batches;
+	/** Number of bulk requests sent. */
+	private final AtomicLong					m_sentBatches;
+	/** Number of observations sent. */
+	private final AtomicLong					m_sentObservations;
+
+	/**
+	 * Constructor that uses the default size and linger time.
+	 *
+	 * @param api		the API instance used to send the requests
+	 */
+	public MonitorDataBatcher(MonAPI api) {
+		this(api, DEFAULT_MAX_BATCH, DEFAULT_LINGER);
+	}
+	/**
+	 * Constructor.
+	 *
+	 * @param api			the API instance used to send the requests
+	 * @param maxBatch		the maximum number of observations in one request
+	 * @param linger		the maximum time, in milliseconds, an observation waits
+	 */
+	public MonitorDataBatcher(MonAPI api, int maxBatch, long linger) {
+		m_api = api;
+		m_batches = new LinkedHashMap<String, Batch>();
+		m_sentBatches = new AtomicLong();
+		m_sentObservations = new AtomicLong();
+		setLimits(maxBatch, linger);
+	}
+
+	/**
+	 * Change the size threshold and the linger time. The open batches keep
+	 * the previous linger time.
+	 *
+	 * @param maxBatch		the maximum number of observations in one request
+	 * @param linger		the maximum time, in milliseconds, an observation waits
+	 */
+	public void setLimits(int maxBatch, long linger) {
+		m_maxBatch = maxBatch > 0 ? maxBatch : DEFAULT_MAX_BATCH;
+		m_linger = linger >= 0 ? linger : DEFAULT_LINGER;
+	}
+
+	/**
+	 * Queue an observation. The outcome of the bulk request that sends it later
+	 * is not reported to the caller: a failed request is buffered and replayed
+	 * by <code>MonAPI</code>, if its buffering is on.
+	 *
+	 * @param systemID		the ID of the monitored system
+	 * @param nodeID		the ID of the monitored node, <code>SYSTEM_NODE</code> for the system
+	 * @param monitorID		the ID of the Monitor
+	 * @param value			the observed value
+	 * @return				true if the observation has been queued, false if it is not valid
+	 */
+	public boolean add(int systemID, int nodeID, int monitorID, String value) {
+		if (monitorID < 0 || nodeID < 0 || value == null) return false;
+		String key = systemID + "/" + nodeID;
+		Batch previous = null;
+		Batch full = null;
+		Batch newBatch = null;
+		synchronized (this) {
+			Batch batch = m_batches.get(key);
+			if (batch != null && batch.m_monitorIDs.contains(monitorID)) {
+				m_batches.remove(key);
+				previous = batch;
+				batch = null;
+			}
+			if (batch == null) {
+				batch = new Batch(key, systemID, nodeID);
+				m_batches.put(key, batch);
+				newBatch = batch;
+			}
+			batch.m_monitorIDs.add(monitorID);
+			batch.m_values.add(value);
+			if (batch.m_monitorIDs.size() >= m_maxBatch) {
+				m_batches.remove(key);
+				full = batch;
+			}
+		}
+		send(previous);
+		send(full);
+		if (newBatch != null && newBatch != full) {
+			scheduleLinger(newBatch);
+		}
+		return true;
+	}
+
+	/**
+	 * Send all the queued observations now.
+	 */
+	public void flush() {
+		List<Batch> toSend;
+		synchronized (this) {
+			toSend = new ArrayList<Batch>(m_batches.values());
+			m_batches.clear();
+		}
+		for (Batch batch : toSend) {
+			send(batch);
+		}
+	}
+
+	/**
+	 * @return the number of bulk requests sent so far
+	 */
+	public long getSentBatches() {
+		return m_sentBatches.get();
+	}
+	/**
+	 * @return the number of observations sent so far
+	 */
+	public long getSentObservations() {
+		return m_sentObservations.get();
+	}
+
+	/**
+	 * Build the parameters of a <code>monitordata</code> bulk request for one node.
+	 * The timestamp is in seconds since the epoch.
+	 *
+	 * @param systemID		the ID of the monitored system
+	 * @param nodeID		the ID of the monitored node
+	 * @param timestamp		the time of the observations
+	 * @param monitorIDs	the ID's of the Monitors
+	 * @param values		the observed values
+	 * @return				the names, at index 0, and values, at index 1, of the parameters
+	 */
+	public static String[][] bulkParameters(int systemID, int nodeID, long timestamp,
+			List<Integer> monitorIDs, List<String> values) {
+		int size = 3 + 2 * monitorIDs.size();
+		String[] fields = new String[size];
+		String[] parameters = new String[size];
+		fields[0] = "systemid";
+		parameters[0] = Integer.toString(systemID);
+		fields[1] = "nodeid";
+		parameters[1] = Integer.toString(nodeID);
+		fields[2] = "timestamp";
+		parameters[2] = Long.toString(timestamp);
+		for (int i=0, j=3; i<monitorIDs.size(); i++) {
+			fields[j] = "m[" + i + "]";
+			parameters[j++] = Integer.toString(monitorIDs.get(i));
+			fields[j] = "v[" + i + "]";
+			parameters[j++] = values.get(i);
+		}
+		return new String[][] {fields, parameters};
+	}
+
+	/**
+	 * Send a batch, if not null, through the asynchronous API.
+	 *
+	 * @param batch		the batch to send
+	 */
+	private void send(Batch batch) {
+		if (batch == null || batch.m_monitorIDs.isEmpty()) return;
+		String[][] parameters = bulkParameters(batch.m_systemID, batch.m_nodeID, batch.m_timestamp,
+				batch.m_monitorIDs, batch.m_values);
+		m_api.bulkMonitorValueAsync("monitordata", parameters[0], parameters[1]);
+		m_sentBatches.incrementAndGet();
+		m_sentObservations.addAndGet(batch.m_monitorIDs.size());
+	}
+
+	/**
+	 * Send the batch after the linger time, unless it has already been sent.
+	 *
+	 * @param batch		the batch just opened
+	 */
+	private void scheduleLinger(final Batch batch) {
+		LINGER_TIMER.schedule(new Runnable() {
+			public void run() {
+				boolean expired = false;
+				synchronized (MonitorDataBatcher.this) {
+					if (m_batches.get(batch.m_key) == batch) {
+						m_batches.remove(batch.m_key);
+						expired = true;
+					}
+				}
+				if (expired) send(batch);
+			}
+		}, m_linger, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * The observations waiting to be sent for one node.
+	 * The timestamp is the one of the first observation.
+	 *
+	 * @author agent
+	 *
+	 */
+	private static class Batch {
+		private final String			m_key;
+		private final int				m_systemID;
+		private final int				m_nodeID;
+		private final long				m_timestamp;
+		private final List<Integer>		m_monitorIDs;
+		private final List<String>		m_values;
+
+		private Batch(String key, int systemID, int nodeID) {
+			m_key = key;
+			m_systemID = systemID;
+			m_nodeID = nodeID;
+			m_timestamp = System.currentTimeMillis() / 1000;
+			m_monitorIDs = new ArrayList<Integer>();
+			m_values = new ArrayList<String>();
+		}
+	}
+}
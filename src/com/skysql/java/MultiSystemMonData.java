@@ -0,0 +1,200 @@
+/*
+ * This file is distributed as part of the MariaDB Manager. It is free
+ * software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ *
+ * Copyright 2026 SkySQL Corporation Ab
+ *
+ * Author: agent
+ * Date: October 2026
+ */
+
+package com.skysql.java;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Serves the Monitor data of many systems over one API client and one cache
+ * per system type. The systems and their nodes are partitioned by system ID
+ * in the cache; the monitor classes and the node states are shared by all the
+ * systems of the same type, so that a change fetched for one of them is seen by
+ * all, and they are fetched once for all of them.
+ * The API credentials are looked up once, and the connections are shared.
+ * 
+ * @author agent
+ *
+ */
+public class MultiSystemMonData {
+	private final MonAPI													m_api;
+	/** The (system type, cache) table. */
+	private final ConcurrentMap<String, GsonLatestObservations>				m_caches =
+			new ConcurrentHashMap<String, GsonLatestObservations>();
+	/** The (system ID, Monitor data) table. */
+	private final ConcurrentMap<Integer, MonData>							m_systems =
+			new ConcurrentHashMap<Integer, MonData>();
+	/** The directory of the cache snapshot files, null if not persisted. */
+	private volatile File													m_snapshotDirectory;
+	/** The period of the background refresh of the caches, 0 if not refreshed in the background. */
+	private volatile long													m_refreshPeriod;
+	
+	/**
+	 * Constructor. The cache snapshot directory is read from the
+	 * SKYSQL_CACHE_SNAPSHOT system property, if set.
+	 */
+	public MultiSystemMonData() {
+		this(new MonAPI());
+	}
+	/**
+	 * Constructor with a given API client.
+	 * 
+	 * @param api		the API client shared by all the systems
+	 */
+	public MultiSystemMonData(MonAPI api) {
+		m_api = api;
+		String snapshots = System.getProperty("SKYSQL_CACHE_SNAPSHOT");
+		if (snapshots != null && ! snapshots.isEmpty()) {
+			setCacheSnapshot(snapshots);
+		}
+	}
+	
+	/**
+	 * Get the Monitor data of a system of the default type, creating it
+	 * the first time.
+	 * 
+	 * @param systemID		the ID of the system
+	 * @return				the Monitor data of the system
+	 */
+	public MonData getSystem(int systemID) {
+		return getSystem(systemID, MonData.DEFAULT_SYSTEM_TYPE);
+	}
+	/**
+	 * Get the Monitor data of a system, creating it the first time. If the
+	 * system has already been created, its type is not changed.
+	 * 
+	 * @param systemID		the ID of the system
+	 * @param systemType	the type of the system
+	 * @return				the Monitor data of the system
+	 */
+	public MonData getSystem(int systemID, String systemType) {
+		MonData monData = m_systems.get(systemID);
+		if (monData != null) return monData;
+		monData = new MonData(systemID, systemType, m_api, getCache(systemType), true);
+		MonData previous = m_systems.putIfAbsent(systemID, monData);
+		if (previous != null) return previous;
+		long period = m_refreshPeriod;
+		if (period > 0) monData.startCacheRefresh(period);
+		return monData;
+	}
+	/**
+	 * Stop serving a system. Its cached data is kept until the cache is reloaded.
+	 * 
+	 * @param systemID		the ID of the system
+	 * @return				the Monitor data of the system, null if not served
+	 */
+	public MonData removeSystem(int systemID) {
+		MonData monData = m_systems.remove(systemID);
+		if (monData != null) monData.stopCacheRefresh();
+		return monData;
+	}
+	/**
+	 * @return the IDs of the systems served
+	 */
+	public Set<Integer> getSystemIDs() {
+		return Collections.unmodifiableSet(m_systems.keySet());
+	}
+	/**
+	 * @return the API client shared by all the systems
+	 */
+	public MonAPI getAPI() {
+		return m_api;
+	}
+	
+	/**
+	 * Refresh the caches of all the systems in the background, as
+	 * <code>MonData.startCacheRefresh</code> does. The systems added
+	 * later are refreshed too.
+	 * 
+	 * @param period		the time between two refreshes, in milliseconds
+	 */
+	public synchronized void startCacheRefresh(long period) {
+		m_refreshPeriod = period;
+		for (MonData monData : m_systems.values()) {
+			monData.startCacheRefresh(period);
+		}
+	}
+	/**
+	 * Stop the background refresh of all the systems, and write the pending
+	 * changes of the cache snapshots.
+	 */
+	public synchronized void stopCacheRefresh() {
+		m_refreshPeriod = 0;
+		for (MonData monData : m_systems.values()) {
+			monData.stopCacheRefresh();
+		}
+		for (GsonLatestObservations cache : m_caches.values()) {
+			cache.flushSnapshot();
+		}
+	}
+	
+	/**
+	 * Persist the caches in snapshot files of the given directory, one file
+	 * per system type, as <code>MonData.setCacheSnapshot</code> does. The files
+	 * left by the previous run are loaded at once.
+	 * 
+	 * @param directory		the directory of the snapshot files, created if needed
+	 * @return				true if the directory can be used
+	 */
+	public synchronized boolean setCacheSnapshot(String directory) {
+		File dir = new File(directory);
+		if (! dir.isDirectory() && ! dir.mkdirs()) {
+			Logging.error("Cannot create the cache snapshot directory " + directory);
+			return false;
+		}
+		m_snapshotDirectory = dir;
+		for (String systemType : m_caches.keySet()) {
+			m_caches.get(systemType).setSnapshotFile(snapshotFile(dir, systemType));
+		}
+		return true;
+	}
+	
+	/**
+	 * Get the cache of the systems of a type, creating it the first time.
+	 * 
+	 * @param systemType	the type of the systems
+	 * @return				the cache
+	 */
+	GsonLatestObservations getCache(String systemType) {
+		GsonLatestObservations cache = m_caches.get(systemType);
+		if (cache != null) return cache;
+		synchronized (this) {
+			cache = m_caches.get(systemType);
+			if (cache == null) {
+				cache = new GsonLatestObservations();
+				File dir = m_snapshotDirectory;
+				if (dir != null && cache.setSnapshotFile(snapshotFile(dir, systemType))) {
+					Logging.info("Cached data of the " + systemType + " systems loaded from " + dir);
+				}
+				m_caches.put(systemType, cache);
+			}
+			return cache;
+		}
+	}
+	private static File snapshotFile(File directory, String systemType) {
+		return new File(directory, "cache-" + systemType + ".json.gz");
+	}
+}
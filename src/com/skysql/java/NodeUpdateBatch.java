@@ -0,0 +1,202 @@
+/*
+ * This file is distributed as part of the MariaDB Manager. It is free
+ * software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ *
+ * Copyright 2026 SkySQL Corporation Ab
+ *
+ * Author: agent
+ * Date: October 2026
+ */
+
+package com.skysql.java;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A set of changes to the fields of the nodes of a system, sent at once by
+ * <code>MonData.updateNodes</code>. The changes of a node are merged in a
+ * single request, the nodes are updated concurrently. If the same field of a
+ * node is changed twice, the last value is sent.
+ * 
+ * @author agent
+ *
+ */
+public class NodeUpdateBatch {
+	/** The (node ID, (field, value)) table, in insertion order. */
+	private final Map<Integer, Map<String, String>>		m_changes =
+			new LinkedHashMap<Integer, Map<String, String>>();
+	
+	/**
+	 * Add a change.
+	 * 
+	 * @param nodeID		the node ID
+	 * @param field			the field of the node, e.g. <code>stateid</code>
+	 * @param value			the new value
+	 * @return				this batch
+	 */
+	public NodeUpdateBatch add(int nodeID, String field, String value) {
+		Map<String, String> fields = m_changes.get(nodeID);
+		if (fields == null) {
+			fields = new LinkedHashMap<String, String>(4);
+			m_changes.put(nodeID, fields);
+		}
+		fields.put(field, value);
+		return this;
+	}
+	/**
+	 * Set the state of a node, as <code>MonData.setNodeState</code> does.
+	 * 
+	 * @param nodeID		the node ID
+	 * @param stateid		the state ID
+	 * @return				this batch
+	 */
+	public NodeUpdateBatch setNodeState(int nodeID, int stateid) {
+		return add(nodeID, "stateid", Integer.toString(stateid));
+	}
+	/**
+	 * Set the database properties of a node, as <code>MonData.setNodeDatabaseProperties</code> does.
+	 * 
+	 * @param nodeID		the node ID
+	 * @param dbType		the database type
+	 * @param dbVersion		the database version
+	 * @return				this batch
+	 */
+	public NodeUpdateBatch setNodeDatabaseProperties(int nodeID, String dbType, String dbVersion) {
+		return add(nodeID, "dbtype", dbType).add(nodeID, "dbversion", dbVersion);
+	}
+	/**
+	 * Set the public IP address of a node.
+	 * 
+	 * @param nodeID		the node ID
+	 * @param publicIP		the public IP address
+	 * @return				this batch
+	 */
+	public NodeUpdateBatch setNodePublicIP(int nodeID, String publicIP) {
+		return add(nodeID, "publicip", publicIP);
+	}
+	/**
+	 * Set the private IP address of a node.
+	 * 
+	 * @param nodeID		the node ID
+	 * @param privateIP		the private IP address
+	 * @return				this batch
+	 */
+	public NodeUpdateBatch setNodePrivateIP(int nodeID, String privateIP) {
+		return add(nodeID, "privateip", privateIP);
+	}
+	
+	/**
+	 * @return the number of nodes to update
+	 */
+	public int size() {
+		return m_changes.size();
+	}
+	/**
+	 * @return the IDs of the nodes to update, in insertion order
+	 */
+	public List<Integer> getNodeIDs() {
+		return new ArrayList<Integer>(m_changes.keySet());
+	}
+	/**
+	 * @param nodeID		the node ID
+	 * @return				the fields to update for the node, empty if none
+	 */
+	String[] getNames(int nodeID) {
+		Map<String, String> fields = m_changes.get(nodeID);
+		return fields == null ? new String[0] : fields.keySet().toArray(new String[fields.size()]);
+	}
+	/**
+	 * @param nodeID		the node ID
+	 * @return				the values of the fields to update for the node, in the
+	 * 						order of <code>getNames</code>
+	 */
+	String[] getValues(int nodeID) {
+		Map<String, String> fields = m_changes.get(nodeID);
+		return fields == null ? new String[0] : fields.values().toArray(new String[fields.size()]);
+	}
+	
+	/**
+	 * The outcome of a batch: for each node, how many rows the API updated,
+	 * or why the update failed.
+	 * 
+	 * @author agent
+	 *
+	 */
+	public static class Result {
+		/** The (node ID, update count) table; the count is <code>-1</code> if the update failed. */
+		private final Map<Integer, Integer>		m_updated = new LinkedHashMap<Integer, Integer>();
+		/** The (node ID, error) table of the failed updates. */
+		private final Map<Integer, String>		m_errors = new LinkedHashMap<Integer, String>();
+		
+		void setUpdated(int nodeID, int updateCount) {
+			m_updated.put(nodeID, updateCount);
+		}
+		void setFailed(int nodeID, String error) {
+			m_updated.put(nodeID, -1);
+			m_errors.put(nodeID, error);
+		}
+		
+		/**
+		 * @return true if the API accepted the update of every node
+		 */
+		public boolean isSuccess() {
+			return m_errors.isEmpty();
+		}
+		/**
+		 * @param nodeID		the node ID
+		 * @return				true if the API accepted the update of the node
+		 */
+		public boolean isSuccess(int nodeID) {
+			return m_updated.containsKey(nodeID) && ! m_errors.containsKey(nodeID);
+		}
+		/**
+		 * @param nodeID		the node ID
+		 * @return				the number of rows updated by the API, <code>0</code> if the
+		 * 						values were already set, <code>-1</code> if the update failed
+		 * 						or the node was not in the batch
+		 */
+		public int getUpdateCount(int nodeID) {
+			Integer count = m_updated.get(nodeID);
+			return count == null ? -1 : count;
+		}
+		/**
+		 * @param nodeID		the node ID
+		 * @return				why the update of the node failed, null if it did not
+		 */
+		public String getError(int nodeID) {
+			return m_errors.get(nodeID);
+		}
+		/**
+		 * @return the IDs of the nodes whose update failed
+		 */
+		public List<Integer> getFailedNodes() {
+			return Collections.unmodifiableList(new ArrayList<Integer>(m_errors.keySet()));
+		}
+		/**
+		 * @return the IDs of all the nodes of the batch
+		 */
+		public List<Integer> getNodeIDs() {
+			return Collections.unmodifiableList(new ArrayList<Integer>(m_updated.keySet()));
+		}
+		@Override
+		public String toString() {
+			return "Node updates: " + m_updated.size() + ", failed: " + m_errors.keySet();
+		}
+	}
+}
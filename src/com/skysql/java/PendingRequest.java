@@ -0,0 +1,209 @@
+/*
+ * This file is distributed as part of the MariaDB Manager. It is free
+ * software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ *
+ * Copyright 2026 SkySQL Corporation Ab
+ *
+ * Author: agent
+ * Date: October 2026
+ */
+
+package com.skysql.java;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A write request to the API that failed and waits to be replayed.
+ * Instances are immutable.
+ *
+ * @author agent
+ *
+ */
+public class PendingRequest {
+	/**
+	 * The HTTP method of the request.
+	 *
+	 * @author agent
+	 *
+	 */
+	public enum METHOD {
+		PUT,
+		POST;
+	}
+
+	/**
+	 * The last identity given to a request.
+	 */
+	private static final AtomicLong		IDS = new AtomicLong();
+	/**
+	 * Writes and reads the requests in binary form.
+	 */
+	public static final RetryQueue.Codec<PendingRequest>	CODEC = new RetryQueue.Codec<PendingRequest>() {
+		public void write(DataOutput out, PendingRequest request) throws IOException {
+			out.writeByte(request.m_method.ordinal());
+			out.writeLong(request.m_sequence);
+			out.writeLong(request.m_id);
+			writeString(out, request.m_uri);
+			writeArray(out, request.m_names);
+			writeArray(out, request.m_values);
+			writeString(out, request.m_date);
+		}
+		public PendingRequest read(DataInput in) throws IOException {
+			int method = in.readByte();
+			if (method < 0 || method >= METHOD.values().length) {
+				throw new IOException("Invalid request method " + method);
+			}
+			long sequence = in.readLong();
+			long id = in.readLong();
+			// the requests created afterwards, e.g. after a restart, get new identities
+			long last;
+			while ((last = IDS.get()) < id && ! IDS.compareAndSet(last, id)) {
+				// retry
+			}
+			return new PendingRequest(METHOD.values()[method], readString(in),
+					readArray(in), readArray(in), readString(in), sequence, id);
+		}
+	};
+
+	private final METHOD		m_method;
+	private final String		m_uri;
+	private final String[]		m_names;
+	private final String[]		m_values;
+	private final String		m_date;
+	/** The position in the <code>PendingRequestLog</code>, -1 if not logged. */
+	private final long			m_sequence;
+	/** The identity of the request, kept by its copies and by <code>CODEC</code>. */
+	private final long			m_id;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param method		the HTTP method
+	 * @param uri			the request URI
+	 * @param names			the names of the parameters, may be null
+	 * @param values		the values of the parameters, may be null
+	 * @param date			the date of the original request in RFC 2822 format, may be null
+	 */
+	public PendingRequest(METHOD method, String uri, String[] names, String[] values, String date) {
+		this(method, uri, names, values, date, -1, IDS.incrementAndGet());
+	}
+	private PendingRequest(METHOD method, String uri, String[] names, String[] values, String date, long sequence,
+			long id) {
+		m_method = method;
+		m_uri = uri;
+		m_names = names;
+		m_values = values;
+		m_date = date;
+		m_sequence = sequence;
+		m_id = id;
+	}
+
+	/**
+	 * Copy of this request with the given log sequence number.
+	 *
+	 * @param sequence		the sequence number
+	 * @return				the new request
+	 */
+	PendingRequest withSequence(long sequence) {
+		return new PendingRequest(m_method, m_uri, m_names, m_values, m_date, sequence, m_id);
+	}
+
+	/**
+	 * @return the HTTP method
+	 */
+	public METHOD getMethod() {
+		return m_method;
+	}
+	/**
+	 * @return the request URI
+	 */
+	public String getUri() {
+		return m_uri;
+	}
+	/**
+	 * @return the names of the parameters, may be null
+	 */
+	public String[] getNames() {
+		return m_names;
+	}
+	/**
+	 * @return the values of the parameters, may be null
+	 */
+	public String[] getValues() {
+		return m_values;
+	}
+	/**
+	 * @return the date of the original request, may be null
+	 */
+	public String getDate() {
+		return m_date;
+	}
+	/**
+	 * @return the sequence number in the write-ahead log, -1 if the request is not logged
+	 */
+	public long getSequence() {
+		return m_sequence;
+	}
+	/**
+	 * The identity of the request: the copies made by <code>withSequence</code> and the
+	 * copies read back by <code>CODEC</code>, from the disk, have the same identity.
+	 * 
+	 * @return the identity, unique in the JVM
+	 */
+	public long getId() {
+		return m_id;
+	}
+
+	@Override
+	public String toString() {
+		return m_method + " " + m_uri;
+	}
+
+	private static void writeString(DataOutput out, String string) throws IOException {
+		if (string == null) {
+			out.writeInt(-1);
+			return;
+		}
+		byte[] bytes = string.getBytes("UTF-8");
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+	private static String readString(DataInput in) throws IOException {
+		int length = in.readInt();
+		if (length < 0) return null;
+		byte[] bytes = new byte[length];
+		in.readFully(bytes);
+		return new String(bytes, "UTF-8");
+	}
+	private static void writeArray(DataOutput out, String[] array) throws IOException {
+		out.writeInt(array == null ? -1 : array.length);
+		if (array == null) return;
+		for (String string : array) {
+			writeString(out, string);
+		}
+	}
+	private static String[] readArray(DataInput in) throws IOException {
+		int length = in.readInt();
+		if (length < 0) return null;
+		String[] array = new String[length];
+		for (int i=0; i<length; i++) {
+			array[i] = readString(in);
+		}
+		return array;
+	}
+}
@@ -0,0 +1,469 @@
+/*
+ * This file is distributed as part of the MariaDB Manager. It is free
+ * software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ *
+ * Copyright 2026 SkySQL Corporation Ab
+ *
+ * Author: agent
+ * Date: October 2026
+ */
+
+package com.skysql.java;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+/**
+ * Write-ahead log of the failed API requests, so that they survive a restart
+ * of the component while the API is down.
+ * <p>
+ * The log is a sequence of memory-mapped segment files in one directory.
+ * Every request gets a sequence number and is appended as a record made of its
+ * length, a CRC32 checksum and the <code>PendingRequest.CODEC</code> encoding.
+ * An append returns once the record is on disk; the threads appending at the
+ * same time share one force of the segment (group commit). The records are
+ * acknowledged once replayed or dropped: an acknowledged record is marked in place
+ * by negating its length, and a segment is deleted when all its records have
+ * been acknowledged.
+ * <p>
+ * When the log is opened, the records of the existing segments that were not
+ * acknowledged are read back and must be queued again by the caller. A record with
+ * a wrong checksum, as left by a crash in the middle of a write, ends the segment.
+ * The acknowledgements are not forced to disk one by one: after a crash of the
+ * system, a request may be replayed twice.
+ *
+ * @author agent
+ *
+ */
+public class PendingRequestLog {
+	/** Default size of a segment file, in bytes. */
+	public final static int			DEFAULT_SEGMENT_SIZE = 4 * 1024 * 1024;
+	/** The first bytes of a segment file. */
+	private final static int		MAGIC = 0x4d44424c;
+	/** Magic number and first sequence number. */
+	private final static int		SEGMENT_HEADER = 12;
+	/** Length and checksum. */
+	private final static int		RECORD_HEADER = 8;
+	private final static String		SEGMENT_PREFIX = "pending-";
+	private final static String		SEGMENT_SUFFIX = ".log";
+
+	/** The directory of the segment files. */
+	private final File						m_directory;
+	/** The size of the new segment files. */
+	private final int						m_segmentSize;
+	/** The segments that hold unacknowledged records, by first sequence number. Guarded by this. */
+	private final TreeMap<Long, Segment>	m_segments;
+	/** The segment receiving the appends. Guarded by this. */
+	private Segment							m_active;
+	/** The next sequence number. Guarded by this. */
+	private long							m_nextSequence;
+	/** The last sequence number written to a segment. Guarded by this. */
+	private long							m_written;
+	/** The requests found when the log was opened. */
+	private final List<PendingRequest>		m_recovered;
+	/** Guards the forces, one at a time. */
+	private final Object					m_commitLock = new Object();
+	/** The last sequence number known to be on disk. Guarded by the commit lock. */
+	private long							m_committed;
+	/** Counters. */
+	private volatile long					m_appended = 0;
+	private final AtomicLong				m_forces = new AtomicLong();
+	private volatile long					m_acknowledged = 0;
+	private volatile long					m_deleted = 0;
+
+	/**
+	 * Constructor that uses the default segment size.
+	 *
+	 * @param directory		the directory of the log, created if needed
+	 * @throws IOException
+	 */
+	public PendingRequestLog(File directory) throws IOException {
+		this(directory, DEFAULT_SEGMENT_SIZE);
+	}
+	/**
+	 * Open the log and read the records left by the previous run.
+	 *
+	 * @param directory		the directory of the log, created if needed
+	 * @param segmentSize	the size of a segment file in bytes
+	 * @throws IOException
+	 */
+	public PendingRequestLog(File directory, int segmentSize) throws IOException {
+		if (! directory.isDirectory() && ! directory.mkdirs()) {
+			throw new IOException("Cannot create the directory " + directory.getPath());
+		}
+		m_directory = directory;
+		m_segmentSize = Math.max(segmentSize, SEGMENT_HEADER + RECORD_HEADER + 64);
+		m_segments = new TreeMap<Long, Segment>();
+		m_recovered = new ArrayList<PendingRequest>();
+		m_nextSequence = 0;
+		recover();
+		m_written = m_nextSequence - 1;
+		m_committed = m_written;
+	}
+
+	/**
+	 * Returns the requests found in the log when it was opened, in order.
+	 * They are still in the log, and must be acknowledged once replayed.
+	 *
+	 * @return		the requests
+	 */
+	public List<PendingRequest> getRecovered() {
+		return m_recovered;
+	}
+
+	/**
+	 * Append a request and wait until it is on disk.
+	 *
+	 * @param request		the request
+	 * @return				the request with its sequence number
+	 * @throws IOException	if the request could not be written
+	 */
+	public PendingRequest append(PendingRequest request) throws IOException {
+		PendingRequest logged;
+		synchronized (this) {
+			logged = request.withSequence(m_nextSequence);
+			byte[] payload = encode(logged);
+			if (m_active == null || m_active.m_buffer.remaining() < RECORD_HEADER + payload.length) {
+				roll(logged.getSequence(), RECORD_HEADER + payload.length);
+			}
+			MappedByteBuffer buffer = m_active.m_buffer;
+			int position = buffer.position();
+			CRC32 crc = new CRC32();
+			crc.update(payload);
+			buffer.position(position + 4);
+			buffer.putInt((int) crc.getValue());
+			buffer.put(payload);
+			// the length goes last: a record is complete once it is set
+			buffer.putInt(position, payload.length);
+			m_active.addRecord(position);
+			m_nextSequence++;
+			m_written = logged.getSequence();
+			m_appended++;
+		}
+		commit(logged.getSequence());
+		return logged;
+	}
+
+	/**
+	 * Acknowledge a request that has been replayed or dropped, so that it is
+	 * not read back when the log is opened again. Requests that were not logged,
+	 * or that have already been acknowledged, are ignored.
+	 *
+	 * @param request		the request
+	 */
+	public synchronized void acknowledge(PendingRequest request) {
+		long sequence = request.getSequence();
+		if (sequence < 0) return;
+		Map.Entry<Long, Segment> entry = m_segments.floorEntry(sequence);
+		if (entry == null) return;
+		Segment segment = entry.getValue();
+		long index = sequence - segment.m_firstSequence;
+		if (index >= segment.m_count || segment.m_buffer == null) return;
+		int position = segment.m_positions[(int) index];
+		int length = segment.m_buffer.getInt(position);
+		if (length <= 0) return;
+		segment.m_buffer.putInt(position, -length);
+		segment.m_acknowledged++;
+		m_acknowledged++;
+		if (segment != m_active && segment.m_acknowledged >= segment.m_count) {
+			delete(segment);
+		}
+	}
+
+	/**
+	 * Force the segments, with their acknowledgements, and release the log. The segments
+	 * that still hold unacknowledged records are kept for the next run.
+	 */
+	public void close() {
+		synchronized (m_commitLock) {
+			synchronized (this) {
+				for (Segment segment : m_segments.values()) {
+					if (segment != m_active && segment.m_buffer != null) segment.m_buffer.force();
+				}
+				if (m_active == null) return;
+				m_active.m_buffer.force();
+				closeQuietly(m_active);
+				if (m_active.m_acknowledged >= m_active.m_count) {
+					delete(m_active);
+				}
+				m_active = null;
+			}
+		}
+	}
+
+	/**
+	 * @return the number of segment files in use
+	 */
+	public synchronized int getSegments() {
+		return m_segments.size();
+	}
+	/**
+	 * @return the number of records appended since the log was opened
+	 */
+	public long getAppended() {
+		return m_appended;
+	}
+	/**
+	 * @return the number of times a segment has been forced to disk
+	 */
+	public long getForces() {
+		return m_forces.get();
+	}
+	/**
+	 * @return the number of records acknowledged since the log was opened
+	 */
+	public long getAcknowledged() {
+		return m_acknowledged;
+	}
+	/**
+	 * @return the number of segment files deleted since the log was opened
+	 */
+	public long getDeleted() {
+		return m_deleted;
+	}
+
+	/**
+	 * A summary of the counters, for logging purposes.
+	 */
+	@Override
+	public String toString() {
+		return "retry log " + m_directory.getPath() + ": " + getSegments() + " segments, " + m_recovered.size()
+				+ " recovered, " + m_appended + " appended, " + m_forces.get() + " forces, "
+				+ m_acknowledged + " acknowledged";
+	}
+
+	/**
+	 * Wait until the given record is on disk. The first thread to get here forces
+	 * the segment for all the records written so far; the threads that were
+	 * waiting behind it find their record already on disk and return.
+	 *
+	 * @param sequence		the sequence number of the record
+	 */
+	private void commit(long sequence) {
+		synchronized (m_commitLock) {
+			if (m_committed >= sequence) return;
+			MappedByteBuffer buffer;
+			long target;
+			synchronized (this) {
+				if (m_active == null) return;
+				buffer = m_active.m_buffer;
+				target = m_written;
+			}
+			// the previous segments were forced when they were closed
+			buffer.force();
+			m_forces.incrementAndGet();
+			m_committed = target;
+		}
+	}
+
+	/**
+	 * Close the active segment and start a new one. Must be called holding the lock.
+	 *
+	 * @param firstSequence		the sequence number of the first record of the new segment
+	 * @param minimum			the space needed by the first record
+	 * @throws IOException
+	 */
+	private void roll(long firstSequence, int minimum) throws IOException {
+		if (m_active != null) {
+			m_active.m_buffer.force();
+			m_forces.incrementAndGet();
+			closeQuietly(m_active);
+			if (m_active.m_acknowledged >= m_active.m_count) {
+				delete(m_active);
+			}
+			m_active = null;
+		}
+		File file = new File(m_directory, segmentName(firstSequence));
+		Segment segment = new Segment(file, firstSequence);
+		int size = Math.max(m_segmentSize, SEGMENT_HEADER + minimum);
+		segment.m_file = new RandomAccessFile(file, "rw");
+		segment.m_buffer = segment.m_file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+		segment.m_buffer.putInt(MAGIC);
+		segment.m_buffer.putLong(firstSequence);
+		m_segments.put(firstSequence, segment);
+		m_active = segment;
+	}
+
+	/**
+	 * Read the existing segments, in order of sequence number.
+	 *
+	 * @throws IOException
+	 */
+	private void recover() throws IOException {
+		File[] files = m_directory.listFiles(new FilenameFilter() {
+			public boolean accept(File dir, String name) {
+				return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX);
+			}
+		});
+		if (files == null) return;
+		// the names hold the first sequence number, zero-padded
+		Arrays.sort(files);
+		for (File file : files) {
+			Segment segment = readSegment(file);
+			if (segment == null) continue;
+			m_nextSequence = Math.max(m_nextSequence, segment.m_firstSequence + segment.m_count);
+			if (segment.m_acknowledged >= segment.m_count) {
+				if (! file.delete()) Logging.warn("Cannot delete " + file.getPath());
+				continue;
+			}
+			m_segments.put(segment.m_firstSequence, segment);
+		}
+		if (! m_recovered.isEmpty()) {
+			Logging.info("Recovered " + m_recovered.size() + " failed requests from " + m_directory.getPath());
+		}
+	}
+	/**
+	 * Read the valid records of a segment file that were not acknowledged
+	 * into the recovered list. The segment stays mapped, to acknowledge them.
+	 *
+	 * @param file		the segment file
+	 * @return			the segment, or null if the file is not a segment
+	 * @throws IOException
+	 */
+	private Segment readSegment(File file) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			long length = raf.length();
+			if (length < SEGMENT_HEADER || length > Integer.MAX_VALUE) {
+				Logging.warn("Ignoring " + file.getPath() + ": not a log segment.");
+				return null;
+			}
+			MappedByteBuffer buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, length);
+			if (buffer.getInt() != MAGIC) {
+				Logging.warn("Ignoring " + file.getPath() + ": not a log segment.");
+				return null;
+			}
+			Segment segment = new Segment(file, buffer.getLong());
+			// the mapping stays valid once the file is closed
+			segment.m_buffer = buffer;
+			while (buffer.remaining() >= RECORD_HEADER) {
+				int position = buffer.position();
+				int size = buffer.getInt();
+				int checksum = buffer.getInt();
+				if (size < 0 && -size <= buffer.remaining()) {
+					// acknowledged
+					buffer.position(buffer.position() - size);
+					segment.addRecord(position);
+					segment.m_acknowledged++;
+					continue;
+				}
+				if (size <= 0 || size > buffer.remaining()) break;
+				byte[] payload = new byte[size];
+				buffer.get(payload);
+				CRC32 crc = new CRC32();
+				crc.update(payload);
+				if ((int) crc.getValue() != checksum) {
+					Logging.warn("Corrupted record in " + file.getPath() + ", the rest of the segment is ignored.");
+					break;
+				}
+				PendingRequest request = decode(payload);
+				if (request == null) break;
+				m_recovered.add(request);
+				segment.addRecord(position);
+			}
+			return segment;
+		} finally {
+			raf.close();
+		}
+	}
+
+	/**
+	 * Delete the file of a segment whose records have all been acknowledged.
+	 * Must be called holding the lock.
+	 *
+	 * @param segment	the segment
+	 */
+	private void delete(Segment segment) {
+		m_segments.remove(segment.m_firstSequence);
+		closeQuietly(segment);
+		segment.m_buffer = null;
+		// the mapping, if any, is released by the garbage collector
+		if (! segment.m_path.delete()) {
+			Logging.warn("Cannot delete " + segment.m_path.getPath());
+		}
+		m_deleted++;
+	}
+	private static void closeQuietly(Segment segment) {
+		if (segment.m_file == null) return;
+		try {
+			segment.m_file.close();
+		} catch (IOException e) {
+			// IGNORE
+		}
+		segment.m_file = null;
+	}
+
+	private static String segmentName(long firstSequence) {
+		return SEGMENT_PREFIX + String.format("%019d", firstSequence) + SEGMENT_SUFFIX;
+	}
+	private static byte[] encode(PendingRequest request) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+		DataOutputStream out = new DataOutputStream(bytes);
+		PendingRequest.CODEC.write(out, request);
+		out.flush();
+		return bytes.toByteArray();
+	}
+	private static PendingRequest decode(byte[] payload) {
+		try {
+			return PendingRequest.CODEC.read(new DataInputStream(new ByteArrayInputStream(payload)));
+		} catch (IOException e) {
+			Logging.warn("Cannot decode a logged request: " + e.getMessage());
+			return null;
+		}
+	}
+
+	/**
+	 * A segment file and the count of its records.
+	 *
+	 * @author agent
+	 *
+	 */
+	private static class Segment {
+		private final File				m_path;
+		private final long				m_firstSequence;
+		/** Open while the segment receives the appends. */
+		private RandomAccessFile		m_file;
+		/** Mapped until the segment is deleted, to mark the acknowledged records. */
+		private MappedByteBuffer		m_buffer;
+		private int						m_count = 0;
+		private int						m_acknowledged = 0;
+		/** The position of each record, by sequence number from the first one. */
+		private int[]					m_positions = new int[64];
+
+		private Segment(File path, long firstSequence) {
+			m_path = path;
+			m_firstSequence = firstSequence;
+		}
+		private void addRecord(int position) {
+			if (m_count == m_positions.length) m_positions = Arrays.copyOf(m_positions, m_count * 2);
+			m_positions[m_count++] = position;
+		}
+	}
+}
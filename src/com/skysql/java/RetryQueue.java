@@ -0,0 +1,475 @@
+/*
+ * This file is distributed as part of the MariaDB Manager. It is free
+ * software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ *
+ * Copyright 2026 SkySQL Corporation Ab
+ *
+ * Author: agent
+ * Date: October 2026
+ */
+
+package com.skysql.java;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded queue of the API requests waiting to be replayed.
+ * <p>
+ * The queue is a lock-free ring buffer: any number of threads may add
+ * requests while the replay thread takes them. When the ring is full, the
+ * overflow policy decides whether the oldest or the newest request is
+ * dropped, or whether the new requests are written to a file on disk and
+ * read back once the ring has been drained.
+ *
+ * @author agent
+ *
+ * @param <E>	the type of the queued requests
+ */
+public class RetryQueue<E> {
+	/**
+	 * What to do when a request is added to a full queue.
+	 *
+	 * @author agent
+	 *
+	 */
+	public enum OVERFLOW {
+		/** Drop the oldest queued request to make room. */
+		DROP_OLDEST,
+		/** Drop the new request. */
+		DROP_NEWEST,
+		/** Write the new request to disk, and read it back when there is room. */
+		SPILL_TO_DISK;
+	}
+
+	/**
+	 * Writes and reads the requests to and from the spill file.
+	 *
+	 * @author agent
+	 *
+	 * @param <E>	the type of the requests
+	 */
+	public interface Codec<E> {
+		/**
+		 * Write a request.
+		 *
+		 * @param out		the output
+		 * @param element	the request
+		 * @throws IOException
+		 */
+		void write(DataOutput out, E element) throws IOException;
+		/**
+		 * Read a request written by <code>write</code>.
+		 *
+		 * @param in		the input
+		 * @return			the request
+		 * @throws IOException
+		 */
+		E read(DataInput in) throws IOException;
+	}
+
+	/**
+	 * Told about the requests dropped by the overflow policy.
+	 * <p>
+	 * With DROP_NEWEST, or when a request cannot be written to the spill file,
+	 * the dropped request is the one being added: it has never been queued, and
+	 * the queued requests are left as they are. With DROP_OLDEST, or when the
+	 * spill file cannot be read back, the dropped requests had been queued.
+	 * The listener runs on the thread that adds or takes the requests.
+	 *
+	 * @param <E>	the type of the requests
+	 */
+	public interface DropListener<E> {
+		/**
+		 * A request has been dropped, and will not be returned by <code>poll</code>.
+		 *
+		 * @param element	the request
+		 */
+		void dropped(E element);
+	}
+
+	/** The ring slots. */
+	private final AtomicReferenceArray<E>	m_items;
+	/** The sequence number of each slot, which tells whether it is free or full. */
+	private final AtomicLongArray			m_sequences;
+	/** capacity - 1, the capacity being a power of two. */
+	private final int						m_mask;
+	/** The next position to read. */
+	private final AtomicLong				m_head;
+	/** The next position to write. */
+	private final AtomicLong				m_tail;
+	/** The overflow policy. */
+	private final OVERFLOW					m_overflow;
+	/** Spill file codec, may be null unless the policy is SPILL_TO_DISK. */
+	private final Codec<E>					m_codec;
+	/** Requests accepted. */
+	private final AtomicLong				m_queued;
+	/** Requests dropped. */
+	private final AtomicLong				m_dropped;
+	/** Requests replayed, as reported by the consumer. */
+	private final AtomicLong				m_replayed;
+	/** Requests written to the spill file. */
+	private final AtomicLong				m_spilled;
+	/** Guards the spill file. */
+	private final Object					m_spillLock = new Object();
+	/** True while there are requests in the spill file: new requests go there too. */
+	private volatile boolean				m_spilling = false;
+	private File							m_spillFile;
+	private DataOutputStream				m_spillOut;
+	private DataInputStream					m_spillIn;
+	/** Requests in the spill file, written and read. Guarded by the spill lock. */
+	private long							m_spillWritten;
+	private long							m_spillRead;
+	/** Told about the dropped requests, may be null. */
+	private volatile DropListener<E>		m_dropListener;
+
+	/**
+	 * Constructor for the policies that do not spill to disk.
+	 *
+	 * @param capacity		the number of requests the ring can hold, rounded up to a power of two
+	 * @param overflow		the overflow policy, either DROP_OLDEST or DROP_NEWEST
+	 */
+	public RetryQueue(int capacity, OVERFLOW overflow) {
+		this(capacity, overflow, null);
+	}
+	/**
+	 * Constructor.
+	 *
+	 * @param capacity		the number of requests the ring can hold, rounded up to a power of two
+	 * @param overflow		the overflow policy
+	 * @param codec			the codec for the spill file, required for SPILL_TO_DISK
+	 */
+	public RetryQueue(int capacity, OVERFLOW overflow, Codec<E> codec) {
+		if (overflow == OVERFLOW.SPILL_TO_DISK && codec == null) {
+			throw new IllegalArgumentException("A codec is required to spill to disk");
+		}
+		int size = 2;
+		while (size < capacity && size < (1 << 30)) {
+			size <<= 1;
+		}
+		m_items = new AtomicReferenceArray<E>(size);
+		m_sequences = new AtomicLongArray(size);
+		for (int i=0; i<size; i++) {
+			m_sequences.set(i, i);
+		}
+		m_mask = size - 1;
+		m_head = new AtomicLong();
+		m_tail = new AtomicLong();
+		m_overflow = overflow == null ? OVERFLOW.DROP_OLDEST : overflow;
+		m_codec = codec;
+		m_queued = new AtomicLong();
+		m_dropped = new AtomicLong();
+		m_replayed = new AtomicLong();
+		m_spilled = new AtomicLong();
+	}
+
+	/**
+	 * Add a request, applying the overflow policy if the queue is full.
+	 *
+	 * @param element		the request
+	 * @return				true if the request has been queued
+	 */
+	public boolean offer(E element) {
+		if (m_spilling && spill(element)) {
+			m_queued.incrementAndGet();
+			return true;
+		}
+		while (! ringOffer(element)) {
+			if (m_overflow == OVERFLOW.DROP_OLDEST) {
+				E oldest = ringPoll();
+				if (oldest != null) drop(oldest);
+			} else if (m_overflow == OVERFLOW.SPILL_TO_DISK && spill(element)) {
+				m_queued.incrementAndGet();
+				return true;
+			} else {
+				drop(element);
+				return false;
+			}
+		}
+		m_queued.incrementAndGet();
+		return true;
+	}
+
+	/**
+	 * Take the oldest request.
+	 *
+	 * @return		the request, or null if the queue is empty
+	 */
+	public E poll() {
+		E element = ringPoll();
+		if (element == null && m_spilling) {
+			element = unspill();
+		}
+		return element;
+	}
+
+	/**
+	 * @return true if there is no request in the queue
+	 */
+	public boolean isEmpty() {
+		return size() == 0;
+	}
+	/**
+	 * @return the number of queued requests, in memory and on disk
+	 */
+	public long size() {
+		long size = m_tail.get() - m_head.get();
+		if (m_spilling) {
+			synchronized (m_spillLock) {
+				size += m_spillWritten - m_spillRead;
+			}
+		}
+		return Math.max(size, 0);
+	}
+	/**
+	 * @return the number of requests the ring can hold
+	 */
+	public int getCapacity() {
+		return m_mask + 1;
+	}
+	/**
+	 * @return the overflow policy
+	 */
+	public OVERFLOW getOverflow() {
+		return m_overflow;
+	}
+
+	/**
+	 * Set the object told about the requests dropped when the queue is full.
+	 *
+	 * @param listener		the listener, null for none
+	 */
+	public void setDropListener(DropListener<E> listener) {
+		m_dropListener = listener;
+	}
+
+	/**
+	 * Record the number of requests the consumer replayed successfully.
+	 *
+	 * @param count		the number of requests
+	 */
+	public void markReplayed(long count) {
+		m_replayed.addAndGet(count);
+	}
+	/**
+	 * @return the number of requests accepted so far
+	 */
+	public long getQueued() {
+		return m_queued.get();
+	}
+	/**
+	 * @return the number of requests dropped so far
+	 */
+	public long getDropped() {
+		return m_dropped.get();
+	}
+	/**
+	 * @return the number of requests replayed so far
+	 */
+	public long getReplayed() {
+		return m_replayed.get();
+	}
+	/**
+	 * @return the number of requests written to disk so far
+	 */
+	public long getSpilled() {
+		return m_spilled.get();
+	}
+
+	/**
+	 * A summary of the counters, for logging purposes.
+	 */
+	@Override
+	public String toString() {
+		return "retry queue: " + size() + " waiting, " + getQueued() + " queued, " + getDropped()
+				+ " dropped, " + getReplayed() + " replayed, " + getSpilled() + " spilled";
+	}
+
+	/**
+	 * Count a dropped request and tell the listener.
+	 *
+	 * @param element	the request
+	 */
+	private void drop(E element) {
+		m_dropped.incrementAndGet();
+		DropListener<E> listener = m_dropListener;
+		if (listener != null) listener.dropped(element);
+	}
+
+	/**
+	 * Add to the ring.
+	 *
+	 * @param element	the request
+	 * @return			false if the ring is full
+	 */
+	private boolean ringOffer(E element) {
+		while (true) {
+			long position = m_tail.get();
+			int index = (int) (position & m_mask);
+			long difference = m_sequences.get(index) - position;
+			if (difference == 0) {
+				if (m_tail.compareAndSet(position, position + 1)) {
+					m_items.set(index, element);
+					m_sequences.set(index, position + 1);
+					return true;
+				}
+			} else if (difference < 0) {
+				return false;
+			}
+		}
+	}
+	/**
+	 * Take from the ring.
+	 *
+	 * @return			the request, or null if the ring is empty
+	 */
+	private E ringPoll() {
+		while (true) {
+			long position = m_head.get();
+			int index = (int) (position & m_mask);
+			long difference = m_sequences.get(index) - (position + 1);
+			if (difference == 0) {
+				if (m_head.compareAndSet(position, position + 1)) {
+					E element = m_items.get(index);
+					m_items.set(index, null);
+					m_sequences.set(index, position + m_mask + 1);
+					return element;
+				}
+			} else if (difference < 0) {
+				return null;
+			}
+		}
+	}
+
+	/**
+	 * Append a request to the spill file.
+	 *
+	 * @param element	the request
+	 * @return			false if it could not be written
+	 */
+	private boolean spill(E element) {
+		synchronized (m_spillLock) {
+			try {
+				if (m_spillOut == null) {
+					m_spillFile = File.createTempFile("mariadb-manager-retry", ".spill");
+					m_spillFile.deleteOnExit();
+					m_spillOut = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(m_spillFile)));
+				}
+				m_codec.write(m_spillOut, element);
+				m_spillOut.flush();
+				m_spillWritten++;
+				m_spilled.incrementAndGet();
+				m_spilling = true;
+				return true;
+			} catch (IOException e) {
+				Logging.error("Cannot write the retry queue to disk: " + e.getMessage());
+				return false;
+			}
+		}
+	}
+	/**
+	 * Read back the oldest request of the spill file. When the file has been
+	 * read completely, it is deleted and the requests go to the ring again.
+	 *
+	 * @return			the request, or null if there is none
+	 */
+	private E unspill() {
+		synchronized (m_spillLock) {
+			try {
+				if (m_spillRead >= m_spillWritten) return null;
+				if (m_spillIn == null) {
+					m_spillIn = new DataInputStream(new BufferedInputStream(new FileInputStream(m_spillFile)));
+				}
+				E element = m_codec.read(m_spillIn);
+				m_spillRead++;
+				if (m_spillRead >= m_spillWritten) closeSpill();
+				return element;
+			} catch (IOException e) {
+				long lost = m_spillWritten - m_spillRead;
+				long unreadable = lost - dropSpill();
+				Logging.error("Cannot read the retry queue from disk, " + lost + " requests dropped, "
+						+ unreadable + " of them unreadable: " + e.getMessage());
+				m_dropped.addAndGet(unreadable);
+				closeSpill();
+				return null;
+			}
+		}
+	}
+	/**
+	 * Drop the requests of the spill file not read yet, telling the listener about
+	 * the ones that can still be decoded. The file is read again from the start,
+	 * since the position of the failed stream is unknown. Must be called holding
+	 * the spill lock.
+	 *
+	 * @return			the number of requests dropped
+	 */
+	private long dropSpill() {
+		long dropped = 0;
+		DataInputStream in = null;
+		try {
+			in = new DataInputStream(new BufferedInputStream(new FileInputStream(m_spillFile)));
+			for (long i=0; i < m_spillRead; i++) {
+				m_codec.read(in);
+			}
+			for (long i=m_spillRead; i < m_spillWritten; i++) {
+				E element = m_codec.read(in);
+				dropped++;
+				drop(element);
+			}
+		} catch (IOException e) {
+			// IGNORE: the rest is lost
+		} finally {
+			if (in != null) {
+				try {
+					in.close();
+				} catch (IOException e) {
+					// IGNORE
+				}
+			}
+		}
+		return dropped;
+	}
+	/**
+	 * Close and delete the spill file. Must be called holding the spill lock.
+	 */
+	private void closeSpill() {
+		try {
+			if (m_spillOut != null) m_spillOut.close();
+			if (m_spillIn != null) m_spillIn.close();
+		} catch (IOException e) {
+			// IGNORE
+		}
+		if (m_spillFile != null && ! m_spillFile.delete()) {
+			Logging.warn("Cannot delete " + m_spillFile.getPath());
+		}
+		m_spillOut = null;
+		m_spillIn = null;
+		m_spillFile = null;
+		m_spillWritten = 0;
+		m_spillRead = 0;
+		m_spilling = false;
+	}
+}
@@ -0,0 +1,243 @@
+/*
+ * This file is distributed as part of the MariaDB Manager. It is free
+ * software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ *
+ * Copyright 2026 SkySQL Corporation Ab
+ *
+ * Author: agent
+ * Date: October 2026
+ */
+
+package com.skysql.java;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Last-writer-wins compaction of the queued PUT requests.
+ * <p>
+ * For every (URI, field) pair, the newest queued PUT that sets the field is
+ * remembered. When an older PUT is replayed, the fields set again by a newer one
+ * are left out, and the request is skipped altogether if none is left: only the
+ * newest value of each field reaches the API. A PUT sent live also makes the queued
+ * values of its fields stale. POST requests, such as the Monitor data, are never
+ * compacted. The requests are told apart by <code>PendingRequest.getId</code>, so that
+ * a request read back from the disk is the same writer as the one queued.
+ * The writer that a request replaced is kept until the next one is queued: if the
+ * queue drops the request without sending it, the older value becomes current again.
+ *
+ * @author agent
+ *
+ */
+public class WriteCompaction {
+	/** The (URI and field, newest queued writer) table. */
+	private final ConcurrentHashMap<String, Writer>			m_latest;
+	/** Orders the queued and the live requests. */
+	private final AtomicLong								m_clock;
+	/** Requests skipped altogether. */
+	private final AtomicLong								m_compacted;
+	/** Fields left out of the replayed requests, including the skipped ones. */
+	private final AtomicLong								m_compactedFields;
+
+	/**
+	 * Constructor.
+	 */
+	public WriteCompaction() {
+		m_latest = new ConcurrentHashMap<String, Writer>();
+		m_clock = new AtomicLong();
+		m_compacted = new AtomicLong();
+		m_compactedFields = new AtomicLong();
+	}
+
+	/**
+	 * Record a request about to be queued as the newest writer of its fields.
+	 * Must be called before the request can be replayed.
+	 *
+	 * @param request		the request
+	 */
+	public void queued(PendingRequest request) {
+		if (! isCompactable(request)) return;
+		long time = m_clock.incrementAndGet();
+		for (String name : request.getNames()) {
+			String key = key(request.getUri(), name);
+			while (true) {
+				Writer previous = m_latest.get(key);
+				Writer writer = new Writer(request.getId(), time, previous);
+				if (previous == null ? m_latest.putIfAbsent(key, writer) == null
+						: m_latest.replace(key, previous, writer)) {
+					// only the last replaced writer is kept
+					if (previous != null) previous.m_previous = null;
+					break;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Forget a request that has been replayed, or skipped by <code>compact</code>.
+	 * The fields of which it was the newest writer have no queued value any more:
+	 * the older values, if any, are stale.
+	 *
+	 * @param request		the request
+	 */
+	public void done(PendingRequest request) {
+		forget(request, false);
+	}
+	/**
+	 * Forget a request that the queue dropped without sending it. The fields of
+	 * which it was the newest writer go back to the writer it replaced, if that is
+	 * still queued.
+	 *
+	 * @param request		the request
+	 */
+	public void dropped(PendingRequest request) {
+		forget(request, true);
+	}
+
+	/**
+	 * Returns the current time of the compaction clock, to be taken before
+	 * sending a live PUT request.
+	 *
+	 * @return		the time
+	 */
+	public long now() {
+		return m_clock.get();
+	}
+	/**
+	 * A PUT request has been sent live: the values of its fields queued before it
+	 * started are stale.
+	 *
+	 * @param uri			the request URI
+	 * @param names			the names of the fields, may be null
+	 * @param started		the time returned by <code>now</code> before sending the request
+	 */
+	public void written(String uri, String[] names, long started) {
+		if (names == null || m_latest.isEmpty()) return;
+		for (String name : names) {
+			String key = key(uri, name);
+			Writer writer = m_latest.get(key);
+			if (writer != null && writer.m_time <= started) {
+				m_latest.remove(key, writer);
+			}
+		}
+	}
+
+	/**
+	 * Returns what is left of a request to replay.
+	 *
+	 * @param request		the queued request
+	 * @return				the request itself, a request with the fields that are still
+	 * 						current, or null if the request need not be sent
+	 */
+	public PendingRequest compact(PendingRequest request) {
+		if (! isCompactable(request)) return request;
+		String[] names = request.getNames();
+		String[] values = request.getValues();
+		List<Integer> current = new ArrayList<Integer>(names.length);
+		for (int i=0; i<names.length; i++) {
+			Writer writer = m_latest.get(key(request.getUri(), names[i]));
+			if (writer != null && writer.m_id == request.getId()) {
+				current.add(i);
+			}
+		}
+		if (current.size() == names.length) return request;
+		m_compactedFields.addAndGet(names.length - current.size());
+		if (current.isEmpty()) {
+			m_compacted.incrementAndGet();
+			return null;
+		}
+		String[] newNames = new String[current.size()];
+		String[] newValues = new String[current.size()];
+		for (int i=0; i<newNames.length; i++) {
+			newNames[i] = names[current.get(i)];
+			newValues[i] = values[current.get(i)];
+		}
+		return new PendingRequest(request.getMethod(), request.getUri(), newNames, newValues, request.getDate());
+	}
+
+	/**
+	 * @return the number of requests that have not been sent because newer ones replaced them
+	 */
+	public long getCompacted() {
+		return m_compacted.get();
+	}
+	/**
+	 * @return the number of field values that have not been sent because newer ones replaced them
+	 */
+	public long getCompactedFields() {
+		return m_compactedFields.get();
+	}
+
+	/**
+	 * A summary of the counters, for logging purposes.
+	 */
+	@Override
+	public String toString() {
+		return "compaction: " + getCompacted() + " requests, " + getCompactedFields() + " fields skipped";
+	}
+
+	/**
+	 * Remove a request from the table.
+	 *
+	 * @param request		the request
+	 * @param restore		true to make the writer it replaced the newest again
+	 */
+	private void forget(PendingRequest request, boolean restore) {
+		if (! isCompactable(request)) return;
+		for (String name : request.getNames()) {
+			String key = key(request.getUri(), name);
+			Writer writer = m_latest.get(key);
+			if (writer == null) continue;
+			if (writer.m_id == request.getId()) {
+				Writer previous = restore ? writer.m_previous : null;
+				if (previous == null) {
+					m_latest.remove(key, writer);
+				} else {
+					m_latest.replace(key, writer, previous);
+				}
+			} else if (writer.m_previous != null && writer.m_previous.m_id == request.getId()) {
+				// not queued any more: it cannot come back
+				writer.m_previous = null;
+			}
+		}
+	}
+
+	private static boolean isCompactable(PendingRequest request) {
+		return request.getMethod() == PendingRequest.METHOD.PUT && request.getNames() != null
+				&& request.getValues() != null && request.getNames().length == request.getValues().length;
+	}
+	private static String key(String uri, String name) {
+		return uri + "\n" + name;
+	}
+
+	/**
+	 * The newest queued writer of a field, when it was queued, and the writer it replaced.
+	 */
+	private static class Writer {
+		/** The identity of the request. */
+		private final long				m_id;
+		private final long				m_time;
+		/** The writer replaced, while it is queued and this one is the newest. */
+		private volatile Writer			m_previous;
+
+		private Writer(long id, long time, Writer previous) {
+			m_id = id;
+			m_time = time;
+			m_previous = previous;
+		}
+	}
+}
@@ -0,0 +1,95 @@
+package com.skysql.java;
+
+/**
+ * Representative API responses, shared by the tests and the benchmarks.
+ *
+ * @author agent
+ *
+ */
+final class ApiResponses {
+	private ApiResponses() {
+	}
+
+	/**
+	 * @param count		the number of nodes
+	 * @return			a node API response
+	 */
+	static String nodes(int count) {
+		StringBuilder json = new StringBuilder(count * 400);
+		json.append(count == 1 ? "{\"node\":" : "{\"nodes\":[");
+		for (int i=1; i<=count; i++) {
+			if (i > 1) json.append(',');
+			json.append("{\"systemid\":\"1\",\"nodeid\":\"").append(i).append("\",\"name\":\"node").append(i)
+				.append("\",\"state\":\"joined\",\"updated\":\"Mon, 02 Jun 2014 10:00:00 +0000\",")
+				.append("\"hostname\":\"db").append(i).append(".example.com\",\"publicip\":\"\",")
+				.append("\"privateip\":\"10.0.").append(i / 250).append('.').append(i % 250)
+				.append("\",\"port\":\"3306\",\"instanceid\":\"\",\"dbusername\":\"admin\",")
+				.append("\"dbpassword\":\"secret\",\"repusername\":\"repl\",\"reppassword\":\"secret\",")
+				.append("\"commands\":[{\"command\":\"stop\",\"description\":\"Stop\",\"icon\":\"stop\",")
+				.append("\"steps\":\"stop\"}],\"lastmonitored\":\"\",\"command\":null,\"taskid\":null}");
+		}
+		json.append(count == 1 ? "}" : "]}");
+		return json.toString();
+	}
+
+	/**
+	 * @param count		the number of systems
+	 * @return			a system API response
+	 */
+	static String systems(int count) {
+		StringBuilder json = new StringBuilder(count * 600);
+		json.append("{\"systems\":[");
+		for (int i=1; i<=count; i++) {
+			if (i > 1) json.append(',');
+			json.append("{\"systemid\":\"").append(i).append("\",\"systemtype\":\"galera\",\"name\":\"system")
+				.append(i).append("\",\"started\":\"Mon, 02 Jun 2014 10:00:00 +0000\",\"lastaccess\":\"\",")
+				.append("\"updated\":\"Mon, 02 Jun 2014 10:00:00 +0000\",\"state\":\"running\",")
+				.append("\"dbusername\":\"admin\",\"dbpassword\":\"secret\",\"repusername\":\"repl\",")
+				.append("\"reppassword\":\"secret\",\"nodes\":[\"1\",\"2\",\"3\"],\"lastbackup\":null,")
+				.append("\"properties\":{\"MonitorInterval\":\"30\",\"IPMonitor\":\"true\"},")
+				.append("\"monitorlatest\":{\"connections\":\"12\",\"traffic\":\"8\",\"availability\":\"100\",")
+				.append("\"clustersize\":\"3\"},\"lastmonitored\":\"Mon, 02 Jun 2014 10:00:30 +0000\"}");
+		}
+		json.append("]}");
+		return json.toString();
+	}
+
+	/**
+	 * @param count		the number of monitor classes
+	 * @return			a monitorclass API response
+	 */
+	static String monitorClasses(int count) {
+		StringBuilder json = new StringBuilder(count * 300);
+		json.append("{\"monitorclasses\":[");
+		for (int i=1; i<=count; i++) {
+			if (i > 1) json.append(',');
+			json.append("{\"systemtype\":\"galera\",\"monitor\":\"monitor").append(i)
+				.append("\",\"name\":\"Monitor ").append(i).append("\",\"sql\":\"select variable_value ")
+				.append("from global_status where variable_name = 'X").append(i).append("'\",")
+				.append("\"description\":\"\",\"decimals\":\"0\",\"mapping\":\"\",\"charttype\":\"LineChart\",")
+				.append("\"delta\":\"").append(i % 2).append("\",\"monitortype\":\"SQL\",\"systemaverage\":\"")
+				.append(i % 2).append("\",\"interval\":\"30\",\"unit\":\"\",\"monitorid\":\"").append(i).append("\"}");
+		}
+		json.append("]}");
+		return json.toString();
+	}
+
+	/**
+	 * @param count		the number of samples
+	 * @return			a monitor_rawdata API response
+	 */
+	static String monitorData(int count) {
+		StringBuilder timestamps = new StringBuilder(count * 14);
+		StringBuilder values = new StringBuilder(count * 8);
+		StringBuilder repeats = new StringBuilder(count * 4);
+		long start = 1401700000;
+		for (int i=0; i<count; i++) {
+			String separator = i > 0 ? "," : "";
+			timestamps.append(separator).append('"').append(start + 30 * i).append('"');
+			values.append(separator).append('"').append((i * 37) % 1000).append('.').append(i % 10).append('"');
+			repeats.append(separator).append('"').append(i % 3).append('"');
+		}
+		return "{\"monitor_rawdata\":{\"timestamp\":[" + timestamps + "],\"value\":[" + values
+				+ "],\"repeats\":[" + repeats + "]}}";
+	}
+}
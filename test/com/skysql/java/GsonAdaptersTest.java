@@ -0,0 +1,127 @@
+package com.skysql.java;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import com.google.gson.Gson;
+
+
+public class GsonAdaptersTest {
+	/** Reflective only: the reference. */
+	Gson gson = new Gson();
+
+	/**
+	 * The streaming adapters must decode the same objects as the reflective
+	 * Gson, and encode them back to the same JSON.
+	 */
+	private void assertSameDecoding(String json, Class<?> objClass) {
+		Object reflective = gson.fromJson(json, objClass);
+		Object streaming = GsonManager.fromJson(json, objClass);
+		assertEquals(gson.toJson(reflective), gson.toJson(streaming));
+		assertEquals(gson.toJson(reflective), GsonManager.toJson(streaming));
+	}
+
+	@Test
+	public void nodesTest() {
+		assertSameDecoding(ApiResponses.nodes(1), GsonNode.class);
+		assertSameDecoding(ApiResponses.nodes(50), GsonNode.class);
+		// numbers and booleans as strings, unknown fields, nested objects
+		assertSameDecoding("{\"node\":{\"nodeid\":3,\"systemid\":true,\"unknown\":{\"a\":[1,2]},"
+				+ "\"monitorlatest\":{\"connections\":\"4\",\"nodestate\":\"joined\"},\"taskid\":null}}",
+				GsonNode.class);
+		assertEquals(3, GsonManager.fromJson("{\"node\":{\"nodeid\":3}}", GsonNode.class).getNode(0).getNodeId());
+	}
+
+	@Test
+	public void systemsTest() {
+		assertSameDecoding(ApiResponses.systems(1), GsonSystem.class);
+		assertSameDecoding(ApiResponses.systems(20), GsonSystem.class);
+		assertSameDecoding("{\"system\":{\"systemid\":\"1\",\"nodes\":null,\"properties\":null}}", GsonSystem.class);
+	}
+
+	@Test
+	public void monitorClassesTest() {
+		assertSameDecoding(ApiResponses.monitorClasses(30), GsonMonitorClasses.class);
+		assertSameDecoding("{\"monitorclass\":{\"monitorid\":7,\"delta\":\"1\"}}", GsonMonitorClasses.class);
+	}
+
+	@Test
+	public void monitorDataTest() {
+		assertSameDecoding(ApiResponses.monitorData(100), GsonMonitorData.class);
+		assertSameDecoding("{\"monitor_data\":{\"timestamp\":[1401700000,null],\"value\":[\"1\",2.5]}}",
+				GsonMonitorData.class);
+	}
+
+	@Test
+	public void monitorSeriesTest() {
+		String json = ApiResponses.monitorData(1000);
+		GsonMonitorData.MonitorData strings = GsonManager.fromJson(json, GsonMonitorData.class).getMonitorData();
+		GsonMonitorSeries.MonitorSeries series = GsonManager.fromJson(json, GsonMonitorSeries.class).getMonitorSeries();
+		assertEquals(1000, series.size());
+		for (int i=0; i<series.size(); i++) {
+			assertEquals(Long.parseLong(strings.getTimestamp().get(i)), series.getTimestamp(i));
+			assertEquals(Double.parseDouble(strings.getValue().get(i)), series.getValue(i), 0);
+			assertEquals(Integer.parseInt(strings.getRepeats().get(i)), series.getRepeats(i));
+		}
+		assertEquals(0, series.indexOf(0));
+		assertEquals(2, series.indexOf(1401700031));
+		assertEquals(1000, series.indexOf(Long.MAX_VALUE));
+		// numbers, nulls and garbage; no repeats
+		series = GsonManager.fromJson("{\"monitor_data\":{\"timestamp\":[1401700000,\"1401700030\",null],"
+				+ "\"value\":[2.5,\"x\",null],\"repeats\":null}}", GsonMonitorSeries.class).getMonitorSeries();
+		assertEquals(3, series.size());
+		assertEquals(1401700030L, series.getTimestamp(1));
+		assertEquals(2.5, series.getValue(0), 0);
+		assertTrue(Double.isNaN(series.getValue(1)));
+		assertEquals(0, series.getRepeats(2));
+		assertEquals("{\"monitor_data\":{\"timestamp\":[1401700000,1401700030,0],\"value\":[2.5,null,null],"
+				+ "\"repeats\":[]}}", GsonManager.toJson(GsonManager.fromJson(
+				"{\"monitor_data\":{\"timestamp\":[1401700000,\"1401700030\",null],\"value\":[2.5,\"x\",null]}}",
+				GsonMonitorSeries.class)));
+	}
+
+	@Test
+	public void numbersTest() {
+		String json = "{\"node\":{\"systemid\":\"2\",\"nodeid\":\"x\",\"instanceid\":\"\"}}";
+		for (GsonNode node : new GsonNode[] {GsonManager.fromJson(json, GsonNode.class),
+				gson.fromJson(json, GsonNode.class)}) {
+			assertEquals(2, node.getNode(0).getSystemId());
+			assertEquals(-1, node.getNode(0).getNodeId());
+			assertEquals(0, node.getNode(0).getInstanceID());
+		}
+		json = "{\"monitorclass\":{\"monitorid\":\"7\",\"delta\":\"1\",\"interval\":\"\"}}";
+		for (GsonMonitorClasses monitor : new GsonMonitorClasses[] {
+				GsonManager.fromJson(json, GsonMonitorClasses.class), gson.fromJson(json, GsonMonitorClasses.class)}) {
+			assertEquals(7, monitor.getMonitorClass(0).getMonitorId());
+			assertEquals(1, monitor.getMonitorClass(0).getDelta());
+			assertEquals(-1, monitor.getMonitorClass(0).getInterval());
+			assertEquals(-1, monitor.getMonitorClass(0).getSystemAverage());
+		}
+	}
+
+	@Test
+	public void provisionedNodeTest() {
+		GsonProvisionedNode provisioned = GsonManager.fromJson("{\"provisionednodes\":[{\"systemid\":\"2\","
+				+ "\"nodeid\":\"5\",\"name\":\"node5\",\"hostname\":\"db5\",\"privateip\":\"10.0.0.5\","
+				+ "\"dbusername\":\"admin\",\"systemtype\":\"galera\"},{\"nodeid\":\"x\"}]}",
+				GsonProvisionedNode.class);
+		for (GsonProvisionedNode.ProvisionedNodes node : provisioned.getProvisionedNodes()) {
+			// the same node as the JSON round trip
+			GsonNode.Nodes expected = GsonManager.fromJson("{\"node\":" + GsonManager.toJson(node) + "}",
+					GsonNode.class).getNode(0);
+			assertEquals(GsonManager.toJson(expected), GsonManager.toJson(node.toNode()));
+			assertEquals(expected.getSystemId(), node.toNode().getSystemId());
+			assertEquals(expected.getNodeId(), node.toNode().getNodeId());
+		}
+		assertEquals(5, provisioned.getProvisionedNodes().get(0).toNode().getNodeId());
+	}
+
+	@Test
+	public void errorsTest() {
+		assertNull(GsonManager.fromJson("{\"errors\":[\"no such node\"],\"node\":null}", GsonNode.class));
+	}
+
+}
@@ -0,0 +1,71 @@
+package com.skysql.java;
+
+import com.google.gson.Gson;
+
+/**
+ * Compares the JSON decoding of <code>GsonManager.fromJson</code>, which parses
+ * once with the streaming adapters of the model classes, with the reflective
+ * Gson decoding in two passes (errors and warnings first, then the object),
+ * as it used to be, and in one pass, on representative API payloads.
+ * The last payload is decoded in columns of primitives by <code>GsonMonitorSeries</code>.
+ * Run with: java com.skysql.java.GsonDecodeBenchmark [iterations]
+ *
+ * @author agent
+ *
+ */
+public class GsonDecodeBenchmark {
+	private static final Gson GSON = new Gson();
+
+	public static void main(String[] args) {
+		int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+		String[] names = {"updated", "node", "1k nodes", "100 systems", "monitor classes", "10k samples",
+				"10k as columns"};
+		String[] payloads = {"{\"updatecount\":1,\"insertkey\":0}", ApiResponses.nodes(1), ApiResponses.nodes(1000),
+				ApiResponses.systems(100), ApiResponses.monitorClasses(60), ApiResponses.monitorData(10000),
+				ApiResponses.monitorData(10000)};
+		Class<?>[] classes = {GsonUpdatedAPI.class, GsonNode.class, GsonNode.class, GsonSystem.class,
+				GsonMonitorClasses.class, GsonMonitorData.class,
+				GsonMonitorSeries.class};
+		System.out.println(String.format("%-16s %9s  %18s %18s %18s", "payload", "bytes",
+				"two-pass reflective", "one-pass reflective", "GsonManager"));
+		for (int p=0; p<payloads.length; p++) {
+			int count = Math.max(iterations * 1000 / payloads[p].length(), 50);
+			// warm up
+			twoPass(payloads[p], classes[p], count);
+			reflective(payloads[p], classes[p], count);
+			manager(payloads[p], classes[p], count);
+			double twoPass = twoPass(payloads[p], classes[p], count);
+			double reflective = reflective(payloads[p], classes[p], count);
+			double manager = manager(payloads[p], classes[p], count);
+			System.out.println(String.format("%-16s %9d  %12.1f us/op %12.1f us/op %12.1f us/op  %.2fx",
+					names[p], payloads[p].length(), twoPass, reflective, manager, twoPass / manager));
+		}
+	}
+
+	private static double twoPass(String json, Class<?> objClass, int count) {
+		long start = System.nanoTime();
+		for (int i=0; i<count; i++) {
+			GsonErrors errors = GSON.fromJson(json, GsonErrors.class);
+			if (errors.getErrors() != null || errors.getWarnings() != null) throw new IllegalStateException();
+			if (GSON.fromJson(json, objClass) == null) throw new IllegalStateException();
+		}
+		return (System.nanoTime() - start) / 1000.0 / count;
+	}
+
+	private static double reflective(String json, Class<?> objClass, int count) {
+		long start = System.nanoTime();
+		for (int i=0; i<count; i++) {
+			GsonErrors object = (GsonErrors) GSON.fromJson(json, objClass);
+			if (object.getErrors() != null || object.getWarnings() != null) throw new IllegalStateException();
+		}
+		return (System.nanoTime() - start) / 1000.0 / count;
+	}
+
+	private static double manager(String json, Class<?> objClass, int count) {
+		long start = System.nanoTime();
+		for (int i=0; i<count; i++) {
+			if (GsonManager.fromJson(json, objClass) == null) throw new IllegalStateException();
+		}
+		return (System.nanoTime() - start) / 1000.0 / count;
+	}
+}
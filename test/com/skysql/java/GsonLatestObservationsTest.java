@@ -0,0 +1,191 @@
+package com.skysql.java;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+
+public class GsonLatestObservationsTest {
+	private static final int THREADS = 8;
+
+	private static List<GsonNode.Nodes> nodes(int count) {
+		return GsonManager.fromJson(ApiResponses.nodes(count), GsonNode.class).getNodes();
+	}
+
+	@Test
+	public void nodesTest() {
+		GsonLatestObservations cache = new GsonLatestObservations();
+		assertNull(cache.getNode(1, 1));
+		assertEquals("Thu, 01 Jan 1970 01:00:00 +0100", cache.getNodeUpdateDate(1, 1));
+		List<GsonNode.Nodes> nodes = nodes(3);
+		cache.setLastNode(new GsonNode(nodes));
+		assertEquals("10.0.0.2", cache.getNode(1, 2).getNode(0).getPrivateIP());
+		assertEquals(3, cache.getAllNodes(1).getNodes().size());
+		long updated = cache.getNodeUpdateTime(1, 2);
+		assertTrue(updated > 0);
+		cache.setAllNodes(1, nodes.subList(0, 1));
+		assertNull(cache.getNode(1, 2));
+		// the update time of a removed node is kept
+		assertEquals(updated, cache.getNodeUpdateTime(1, 2));
+		assertEquals(1, cache.getAllNodes(1).getNodes().size());
+		cache.clearAllNodes(1);
+		assertNull(cache.getAllNodes(1));
+	}
+
+	@Test
+	public void allocationFreeReadsTest() {
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		Assume.assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+		Assume.assumeTrue(threads.isThreadAllocatedMemorySupported());
+		threads.setThreadAllocatedMemoryEnabled(true);
+		GsonLatestObservations cache = new GsonLatestObservations();
+		cache.setLastNode(new GsonNode(nodes(50)));
+		cache.setLastMonitor(GsonManager.fromJson(ApiResponses.monitorClasses(30), GsonMonitorClasses.class));
+		String[] keys = new String[30];
+		for (int i=0; i<keys.length; i++) {
+			keys[i] = "Monitor" + (i + 1);
+		}
+		long id = Thread.currentThread().getId();
+		long checksum = 0;
+		// a read path that allocates does so in every round; the JIT may allocate in any one of them
+		long allocated = Long.MAX_VALUE;
+		for (int round=0; round<5; round++) {
+			long before = threads.getThreadAllocatedBytes(id);
+			long after = threads.getThreadAllocatedBytes(id);
+			long overhead = after - before;
+			before = threads.getThreadAllocatedBytes(id);
+			for (int i=0; i<100000; i++) {
+				checksum += cache.getNode(1, i % 50 + 1).getNode(0).getPrivateIP().length();
+				checksum += cache.getAllNodes(1).getNode(i % 50).getNodeId();
+				checksum += cache.getMonitorClasses(i % 30 + 1).getMonitorClass(0).getSql().length();
+				checksum += cache.getAllMonitorClasses().getMonitorClass(i % 30).getInterval();
+				checksum += cache.getNodeUpdateTime(1, i % 50 + 1) > 0 ? 1 : 0;
+				checksum += cache.getMonitorClassesByKey(keys[i % 30]).getMonitorClass(0).getMonitorId();
+			}
+			after = threads.getThreadAllocatedBytes(id);
+			if (round >= 2) allocated = Math.min(allocated, after - before - overhead);
+		}
+		assertEquals(0, allocated);
+		assertTrue(checksum > 0);
+	}
+
+	@Test
+	public void monitorKeysTest() {
+		GsonLatestObservations cache = new GsonLatestObservations();
+		assertNull(cache.getMonitorClassesByKey("monitor1"));
+		cache.setLastMonitor(GsonManager.fromJson(ApiResponses.monitorClasses(30), GsonMonitorClasses.class));
+		assertEquals(12, cache.getMonitorClassesByKey("monitor12").getMonitorClass(0).getMonitorId());
+		assertEquals(12, cache.getMonitorClassesByKey("MONITOR12").getMonitorClass(0).getMonitorId());
+		assertNull(cache.getMonitorClassesByKey("monitor31"));
+		assertNull(cache.getMonitorClassesByKey(null));
+		// a refresh replaces the index
+		cache.setLastMonitor(GsonManager.fromJson(ApiResponses.monitorClasses(3), GsonMonitorClasses.class));
+		assertNull(cache.getMonitorClassesByKey("monitor12"));
+	}
+
+	@Test
+	public void nodeStatesTest() {
+		GsonLatestObservations cache = new GsonLatestObservations();
+		assertNull(cache.getNodeStates("galera"));
+		cache.setNodeStates("galera", GsonManager.fromJson("{\"nodestates\":[{\"state\":\"joined\",\"stateid\":1,"
+				+ "\"description\":\"Joined\"},{\"state\":\"down\",\"stateid\":2,\"description\":\"Down\"}]}",
+				GsonNodeStates.class));
+		GsonNodeStates.Index index = cache.getNodeStates("galera");
+		assertEquals(2, index.getIdFromState("Down"));
+		assertEquals(-1, index.getIdFromState("unknown"));
+		assertEquals("joined", index.getStateFromId(1));
+		assertEquals("Down", index.getDescriptionFromId(2));
+		assertNull(index.getStateFromId(3));
+		assertEquals(2, index.getDescriptionList().size());
+		long checked = cache.getNodeStatesCheckTime("galera");
+		String updated = cache.getNodeStatesUpdateDate("galera");
+		cache.setNodeStatesChecked("galera");
+		assertTrue(cache.getNodeStatesCheckTime("galera") >= checked);
+		assertEquals(updated, cache.getNodeStatesUpdateDate("galera"));
+	}
+
+	@Test
+	public void snapshotTest() throws Exception {
+		File file = File.createTempFile("mariadb-manager-cache", ".json.gz");
+		file.delete();
+		try {
+			GsonLatestObservations cache = new GsonLatestObservations();
+			cache.setSnapshotFile(file);
+			cache.setLastSystem(GsonManager.fromJson(ApiResponses.systems(2), GsonSystem.class));
+			cache.setLastNode(new GsonNode(nodes(3)));
+			cache.setAllNodes(1, nodes(2));
+			cache.setLastMonitor(GsonManager.fromJson(ApiResponses.monitorClasses(4), GsonMonitorClasses.class));
+			cache.setNodeStates("galera", GsonManager.fromJson("{\"nodestate\":{\"state\":\"joined\",\"stateid\":1}}",
+					GsonNodeStates.class));
+			// the changes are written in the background, or now
+			cache.flushSnapshot();
+			assertFalse(cache.flushSnapshot());
+			assertTrue(file.exists());
+
+			GsonLatestObservations loaded = new GsonLatestObservations();
+			assertTrue(loaded.setSnapshotFile(file));
+			assertEquals("system2", loaded.getSystem(2).getSystem(0).getName());
+			assertEquals(cache.getSystemUpdateDate(2), loaded.getSystemUpdateDate(2));
+			assertEquals("10.0.0.2", loaded.getNode(1, 2).getNode(0).getPrivateIP());
+			assertEquals(2, loaded.getAllNodes(1).getNodes().size());
+			// a removed node keeps its update time
+			assertNull(loaded.getNode(1, 3));
+			assertEquals(cache.getNodeUpdateTime(1, 3), loaded.getNodeUpdateTime(1, 3));
+			assertEquals(cache.getMonitorUpdateDate(), loaded.getMonitorUpdateDate());
+			assertEquals(30, loaded.getMonitorClasses(3).getMonitorClass(0).getInterval());
+			assertEquals(4, loaded.getAllMonitorClasses().getMonitorClasses().size());
+			assertEquals(1, loaded.getNodeStates("galera").getIdFromState("joined"));
+			assertEquals(cache.getNodeStatesUpdateDate("galera"), loaded.getNodeStatesUpdateDate("galera"));
+		} finally {
+			file.delete();
+		}
+	}
+
+	@Test
+	public void concurrentTest() throws Exception {
+		final GsonLatestObservations cache = new GsonLatestObservations();
+		final List<GsonNode.Nodes> nodes = nodes(400);
+		final AtomicBoolean failed = new AtomicBoolean();
+		Thread[] threads = new Thread[THREADS];
+		for (int t=0; t<threads.length; t++) {
+			final int first = t;
+			threads[t] = new Thread() {
+				public void run() {
+					try {
+						// writers interleave on the same system, readers must never fail
+						for (int i=first; i<nodes.size(); i+=THREADS) {
+							cache.setLastNode(new GsonNode(nodes.get(i)));
+							GsonNode all = cache.getAllNodes(1);
+							if (all == null || cache.getNode(1, i + 1) == null) failed.set(true);
+						}
+					} catch (RuntimeException e) {
+						failed.set(true);
+					}
+				}
+			};
+		}
+		for (Thread thread : threads) {
+			thread.start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		assertFalse(failed.get());
+		assertEquals(400, cache.getAllNodes(1).getNodes().size());
+		for (int i=1; i<=400; i++) {
+			assertNotNull(cache.getNode(1, i));
+		}
+	}
+
+}
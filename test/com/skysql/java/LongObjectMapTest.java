@@ -0,0 +1,46 @@
+package com.skysql.java;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+
+public class LongObjectMapTest {
+
+	@Test
+	public void putGetTest() {
+		LongObjectMap.Builder<String> builder = LongObjectMap.<String>empty().builder();
+		for (int i=0; i<1000; i++) {
+			builder.put(LongObjectMap.pack(i % 7, i), "v" + i);
+		}
+		LongObjectMap<String> map = builder.build();
+		assertEquals(1000, map.size());
+		for (int i=0; i<1000; i++) {
+			assertEquals("v" + i, map.get(LongObjectMap.pack(i % 7, i)));
+			// insertion order
+			assertEquals(LongObjectMap.pack(i % 7, i), map.keyAt(i));
+		}
+		assertNull(map.get(LongObjectMap.pack(1, 0)));
+		assertNull(LongObjectMap.<String>empty().get(0));
+	}
+
+	@Test
+	public void copyOnWriteTest() {
+		LongObjectMap<String> map = LongObjectMap.<String>empty().with(1, "a").with(2, "b");
+		LongObjectMap<String> replaced = map.with(1, "c");
+		assertEquals("a", map.get(1));
+		assertEquals("c", replaced.get(1));
+		// a replaced key keeps its position
+		assertEquals("c", replaced.valueAt(0));
+		assertEquals(2, replaced.size());
+	}
+
+	@Test
+	public void packTest() {
+		assertEquals(0x0000000100000002L, LongObjectMap.pack(1, 2));
+		assertEquals(0xffffffffffffffffL, LongObjectMap.pack(-1, -1));
+		assertEquals(0x00000001ffffffffL, LongObjectMap.pack(1, -1));
+	}
+
+}
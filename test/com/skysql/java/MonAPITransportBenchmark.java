@@ -0,0 +1,107 @@
+package com.skysql.java;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Compares the MonAPI transports under concurrent load, against a local
+ * stand-in for the API that answers node GETs and monitordata POSTs.
+ * Run with: java com.skysql.java.MonAPITransportBenchmark [threads] [requests per thread]
+ *
+ * @author agent
+ *
+ */
+public class MonAPITransportBenchmark {
+	private static final byte[] NODE_JSON = ("{\"node\":{\"systemid\":\"1\",\"nodeid\":\"1\",\"name\":\"node1\","
+			+ "\"state\":\"joined\",\"privateip\":\"10.0.0.1\",\"instanceid\":\"\"}}").getBytes();
+	private static final byte[] POST_JSON = "{\"updatecount\":1}".getBytes();
+
+	public static void main(String[] args) throws Exception {
+		int threads = args.length > 0 ? Integer.parseInt(args[0]) : 16;
+		int requests = args.length > 1 ? Integer.parseInt(args[1]) : 500;
+		// the stand-in would otherwise delay every keep-alive response by Nagle's algorithm
+		System.setProperty("sun.net.httpserver.nodelay", "true");
+		final Set<InetSocketAddress> sockets = Collections.synchronizedSet(new HashSet<InetSocketAddress>());
+		HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 128);
+		server.createContext("/", new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				sockets.add(exchange.getRemoteAddress());
+				InputStream in = exchange.getRequestBody();
+				while (in.read() >= 0) {
+					// consume the form data
+				}
+				byte[] body = "GET".equals(exchange.getRequestMethod()) ? NODE_JSON : POST_JSON;
+				exchange.sendResponseHeaders(200, body.length);
+				OutputStream out = exchange.getResponseBody();
+				out.write(body);
+				exchange.close();
+			}
+		});
+		server.setExecutor(Executors.newFixedThreadPool(threads));
+		server.start();
+		System.setProperty("SKYSQL_API_HOST", "http://127.0.0.1:" + server.getAddress().getPort());
+		System.setProperty("SKYSQL_API_KEY", "1f8d9e040e65d7b105538b1ed0231770");
+		System.setProperty("SKYSQL_API_KEYID", "1");
+		System.setProperty("SKYSQL_API_MAXCONNECTIONS", Integer.toString(threads));
+		// let the JVM keep alive as many sockets as the limiter allows
+		System.setProperty("http.maxConnections", Integer.toString(threads));
+		try {
+			for (MonAPI.TRANSPORT transport : MonAPI.TRANSPORT.values()) {
+				run(transport, threads, requests / 5, sockets);	// warm up
+				sockets.clear();
+				long elapsed = run(transport, threads, requests, sockets);
+				long total = (long) threads * requests;
+				System.out.println(transport + ": " + total + " requests in " + elapsed + " ms, "
+						+ (total * 1000 / Math.max(elapsed, 1)) + " req/s, " + sockets.size() + " connections");
+			}
+			System.out.println(MonAPI.getConnectionLimiter());
+		} finally {
+			server.stop(0);
+			((ExecutorService) server.getExecutor()).shutdownNow();
+		}
+	}
+
+	/**
+	 * Half of the requests are node GETs, the other half monitordata POSTs.
+	 */
+	private static long run(MonAPI.TRANSPORT transport, int threads, final int requests,
+			Set<InetSocketAddress> sockets) throws InterruptedException {
+		final MonAPI api = new MonAPI(false, 1);
+		api.setTransport(transport);
+		final CountDownLatch done = new CountDownLatch(threads);
+		ExecutorService clients = Executors.newFixedThreadPool(threads);
+		long start = System.currentTimeMillis();
+		for (int t = 0; t < threads; t++) {
+			final int nodeID = t + 1;
+			clients.execute(new Runnable() {
+				public void run() {
+					for (int i = 0; i < requests; i++) {
+						if (i % 2 == 0) {
+							api.getReturnedJson("system/1/node/" + nodeID, null, null);
+						} else {
+							api.bulkMonitorValue("monitordata", new String[] {"systemid", "nodeid", "m[0]", "v[0]"},
+									new String[] {"1", Integer.toString(nodeID), "1", Integer.toString(i)});
+						}
+					}
+					done.countDown();
+				}
+			});
+		}
+		done.await();
+		long elapsed = System.currentTimeMillis() - start;
+		clients.shutdown();
+		return elapsed;
+	}
+}
@@ -0,0 +1,100 @@
+package com.skysql.java;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.util.Properties;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+
+public class MonitorDataBatcherTest {
+	private Properties saved;
+	private HttpServer server;
+	private final BlockingQueue<String> requests = new LinkedBlockingQueue<String>();
+
+	@Before
+	public void setUp() throws IOException {
+		saved = (Properties) System.getProperties().clone();
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 8);
+		server.createContext("/", new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				InputStream in = exchange.getRequestBody();
+				StringBuilder body = new StringBuilder();
+				int c;
+				while ((c = in.read()) >= 0) {
+					body.append((char) c);
+				}
+				requests.add(exchange.getRequestMethod() + " " + exchange.getRequestURI().getPath() + " "
+						+ URLDecoder.decode(body.toString(), "UTF-8"));
+				byte[] response = "{\"updatecount\":1}".getBytes();
+				exchange.sendResponseHeaders(200, response.length);
+				OutputStream out = exchange.getResponseBody();
+				out.write(response);
+				exchange.close();
+			}
+		});
+		server.start();
+		System.setProperty("SKYSQL_API_HOST", "http://127.0.0.1:" + server.getAddress().getPort());
+		System.setProperty("SKYSQL_API_KEY", "1f8d9e040e65d7b105538b1ed0231770");
+		System.setProperty("SKYSQL_API_KEYID", "1");
+	}
+
+	@After
+	public void tearDown() {
+		server.stop(0);
+		System.setProperties(saved);
+	}
+
+	@Test
+	public void systemObservationTest() throws InterruptedException {
+		MonData data = new MonData(1, MonData.DEFAULT_SYSTEM_TYPE, new MonAPI(false, 1),
+				new GsonLatestObservations(), false);
+		data.setMonitorDataBatching(10, 60000);
+		assertTrue(data.monitorData(1, 4, "12"));
+		assertTrue(data.monitorData(1, 5, "7"));
+		assertNull(requests.poll(200, TimeUnit.MILLISECONDS));
+		data.flushMonitorData();
+		// one bulk request, at the system level
+		String request = requests.poll(10, TimeUnit.SECONDS);
+		assertTrue(request, request.startsWith("POST /monitordata systemid=1&nodeid=0&timestamp="));
+		assertTrue(request, request.endsWith("&m[0]=4&v[0]=12&m[1]=5&v[1]=7"));
+		assertNull(requests.poll(200, TimeUnit.MILLISECONDS));
+	}
+
+	@Test
+	public void nodeObservationTest() throws InterruptedException {
+		MonitorDataBatcher batch = new MonitorDataBatcher(new MonAPI(false, 1), 2, 60000);
+		assertFalse(batch.add(1, -1, 4, "12"));
+		assertFalse(batch.add(1, 2, 4, null));
+		assertTrue(batch.add(1, MonitorDataBatcher.SYSTEM_NODE, 4, "12"));
+		// the nodes are sent apart from the system
+		assertTrue(batch.add(1, 2, 4, "3"));
+		assertTrue(batch.add(1, 2, 5, "8"));
+		String request = requests.poll(10, TimeUnit.SECONDS);
+		assertTrue(request, request.startsWith("POST /monitordata systemid=1&nodeid=2&"));
+		assertTrue(request, request.endsWith("&m[0]=4&v[0]=3&m[1]=5&v[1]=8"));
+		batch.flush();
+		request = requests.poll(10, TimeUnit.SECONDS);
+		assertTrue(request, request.startsWith("POST /monitordata systemid=1&nodeid=0&"));
+		assertEquals(2, batch.getSentBatches());
+		assertEquals(3, batch.getSentObservations());
+	}
+
+}
@@ -0,0 +1,60 @@
+package com.skysql.java;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.Properties;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+
+public class MultiSystemMonDataTest {
+	private Properties saved;
+
+	@Before
+	public void setUp() {
+		saved = (Properties) System.getProperties().clone();
+		// no request is sent
+		System.setProperty("SKYSQL_API_HOST", "http://127.0.0.1:1");
+		System.setProperty("SKYSQL_API_KEY", "1f8d9e040e65d7b105538b1ed0231770");
+		System.setProperty("SKYSQL_API_KEYID", "1");
+	}
+
+	@After
+	public void tearDown() {
+		System.setProperties(saved);
+	}
+
+	@Test
+	public void sharingTest() {
+		MultiSystemMonData systems = new MultiSystemMonData();
+		MonData first = systems.getSystem(1);
+		assertSame(first, systems.getSystem(1));
+		assertNotSame(first, systems.getSystem(2));
+		assertSame(systems.getCache("galera"), systems.getCache(MonData.DEFAULT_SYSTEM_TYPE));
+		assertNotSame(systems.getCache("galera"), systems.getCache("aws"));
+		systems.getSystem(3, "aws");
+		assertEquals(3, systems.getSystemIDs().size());
+
+		// the monitor classes saved for a system are seen by the others of the same type
+		systems.getCache("galera").setLastMonitor(
+				GsonManager.fromJson(ApiResponses.monitorClasses(4), GsonMonitorClasses.class));
+		assertEquals(30, systems.getSystem(2).getMonitorClassInterval("Monitor4"));
+		assertEquals(-1, systems.getSystem(3).getMonitorClassInterval("monitor4"));
+		// the nodes are partitioned by system
+		systems.getCache("galera").setAllNodes(1, GsonManager.fromJson(ApiResponses.nodes(2),
+				GsonNode.class).getNodes());
+		assertEquals(2, first.getNodeListCached().size());
+		assertNull(systems.getSystem(2).getNodeListCached());
+
+		assertSame(first, systems.removeSystem(1));
+		assertFalse(systems.getSystemIDs().contains(1));
+		assertFalse(first.setCacheSnapshot(System.getProperty("java.io.tmpdir")));
+	}
+
+}
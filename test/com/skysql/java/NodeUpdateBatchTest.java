@@ -0,0 +1,49 @@
+package com.skysql.java;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+
+public class NodeUpdateBatchTest {
+
+	@Test
+	public void mergeTest() {
+		NodeUpdateBatch batch = new NodeUpdateBatch()
+				.setNodeState(2, 1)
+				.setNodeState(3, 1)
+				.setNodeDatabaseProperties(2, "MariaDB", "10.0")
+				.setNodeState(2, 5);
+		assertEquals(2, batch.size());
+		assertEquals(Arrays.asList(2, 3), batch.getNodeIDs());
+		// one request per node, the last value of a field wins
+		assertArrayEquals(new String[] {"stateid", "dbtype", "dbversion"}, batch.getNames(2));
+		assertArrayEquals(new String[] {"5", "MariaDB", "10.0"}, batch.getValues(2));
+		assertArrayEquals(new String[0], batch.getNames(4));
+	}
+
+	@Test
+	public void resultTest() {
+		NodeUpdateBatch.Result result = new NodeUpdateBatch.Result();
+		result.setUpdated(1, 1);
+		result.setUpdated(2, 0);
+		assertTrue(result.isSuccess());
+		result.setFailed(3, "no valid response from the API");
+		assertFalse(result.isSuccess());
+		assertTrue(result.isSuccess(2));
+		assertFalse(result.isSuccess(3));
+		assertFalse(result.isSuccess(4));
+		assertEquals(0, result.getUpdateCount(2));
+		assertEquals(-1, result.getUpdateCount(3));
+		assertEquals(Arrays.asList(3), result.getFailedNodes());
+		assertEquals(Arrays.asList(1, 2, 3), result.getNodeIDs());
+		assertNull(result.getError(1));
+	}
+
+}
@@ -0,0 +1,80 @@
+package com.skysql.java;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Compares a cluster-wide node state change sent one node at a time with
+ * <code>MonData.setNodeState</code>, and sent at once with <code>MonData.updateNodes</code>.
+ * The local stand-in for the API answers after a fixed latency, as a remote API would.
+ * Run with: java com.skysql.java.NodeUpdateBenchmark [nodes] [latency ms] [rounds]
+ *
+ * @author agent
+ *
+ */
+public class NodeUpdateBenchmark {
+	private static final byte[] PUT_JSON = "{\"updatecount\":1}".getBytes();
+
+	public static void main(String[] args) throws Exception {
+		int nodes = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+		final long latency = args.length > 1 ? Long.parseLong(args[1]) : 20;
+		int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+		System.setProperty("sun.net.httpserver.nodelay", "true");
+		HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 128);
+		server.createContext("/", new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				InputStream in = exchange.getRequestBody();
+				while (in.read() >= 0) {
+					// consume the form data
+				}
+				try {
+					Thread.sleep(latency);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				exchange.sendResponseHeaders(200, PUT_JSON.length);
+				OutputStream out = exchange.getResponseBody();
+				out.write(PUT_JSON);
+				exchange.close();
+			}
+		});
+		server.setExecutor(Executors.newCachedThreadPool());
+		server.start();
+		System.setProperty("SKYSQL_API_HOST", "http://127.0.0.1:" + server.getAddress().getPort());
+		System.setProperty("SKYSQL_API_KEY", "1f8d9e040e65d7b105538b1ed0231770");
+		System.setProperty("SKYSQL_API_KEYID", "1");
+		try {
+			MonData monData = new MonData(1);
+			for (int round=0; round<=rounds; round++) {
+				long start = System.nanoTime();
+				for (int node=1; node<=nodes; node++) {
+					monData.setNodeState(node, round % 2 + 1);
+				}
+				long oneByOne = System.nanoTime() - start;
+				NodeUpdateBatch batch = new NodeUpdateBatch();
+				for (int node=1; node<=nodes; node++) {
+					batch.setNodeState(node, round % 2 + 1);
+				}
+				start = System.nanoTime();
+				NodeUpdateBatch.Result result = monData.updateNodes(batch);
+				long batched = System.nanoTime() - start;
+				// the first round warms up
+				if (round == rounds) {
+					System.out.println(String.format("%d nodes, %d ms latency: one by one %.1f ms, batch %.1f ms (%s)",
+							nodes, latency, oneByOne / 1e6, batched / 1e6, result.isSuccess() ? "all updated" : result));
+				}
+			}
+		} finally {
+			server.stop(0);
+			((ExecutorService) server.getExecutor()).shutdownNow();
+		}
+	}
+}
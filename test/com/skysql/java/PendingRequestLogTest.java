@@ -0,0 +1,159 @@
+package com.skysql.java;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+
+public class PendingRequestLogTest {
+	File directory;
+
+	@Before
+	public void setUp() throws IOException {
+		directory = File.createTempFile("mariadb-manager-log", "");
+		directory.delete();
+	}
+
+	@After
+	public void tearDown() {
+		File[] files = directory.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				file.delete();
+			}
+		}
+		directory.delete();
+	}
+
+	private static PendingRequest request(int i) {
+		return new PendingRequest(PendingRequest.METHOD.PUT, "system/1/node/" + i,
+				new String[] {"stateid"}, new String[] {Integer.toString(i)}, null);
+	}
+
+	@Test
+	public void recoverTest() throws IOException {
+		PendingRequestLog log = new PendingRequestLog(directory, 1024);
+		for (int i=0; i<100; i++) {
+			assertEquals(i, log.append(request(i)).getSequence());
+		}
+		assertTrue(log.getSegments() > 1);
+		log.close();
+
+		log = new PendingRequestLog(directory, 1024);
+		List<PendingRequest> recovered = log.getRecovered();
+		assertEquals(100, recovered.size());
+		for (int i=0; i<100; i++) {
+			assertEquals(i, recovered.get(i).getSequence());
+			assertEquals("system/1/node/" + i, recovered.get(i).getUri());
+			assertArrayEquals(new String[] {Integer.toString(i)}, recovered.get(i).getValues());
+		}
+		// the numbering goes on
+		assertEquals(100, log.append(request(100)).getSequence());
+		log.close();
+	}
+
+	@Test
+	public void acknowledgeWithoutCloseTest() throws IOException {
+		PendingRequestLog log = new PendingRequestLog(directory, 1024);
+		List<PendingRequest> logged = new ArrayList<PendingRequest>();
+		for (int i=0; i<50; i++) {
+			logged.add(log.append(request(i)));
+		}
+		// out of order, and twice
+		for (int i=49; i>=0; i-=2) {
+			log.acknowledge(logged.get(i));
+			log.acknowledge(logged.get(i));
+		}
+		// as after a crash: the log is not closed
+		log = new PendingRequestLog(directory, 1024);
+		List<PendingRequest> recovered = log.getRecovered();
+		assertEquals(25, recovered.size());
+		for (int i=0; i<25; i++) {
+			assertEquals(2 * i, recovered.get(i).getSequence());
+		}
+		assertEquals(50, log.append(request(50)).getSequence());
+		for (PendingRequest request : recovered) {
+			log.acknowledge(request);
+		}
+		log = new PendingRequestLog(directory, 1024);
+		assertEquals(1, log.getRecovered().size());
+		assertEquals(50, log.getRecovered().get(0).getSequence());
+		log.close();
+	}
+
+	@Test
+	public void acknowledgeTest() throws IOException {
+		PendingRequestLog log = new PendingRequestLog(directory, 1024);
+		List<PendingRequest> logged = new ArrayList<PendingRequest>();
+		for (int i=0; i<100; i++) {
+			logged.add(log.append(request(i)));
+		}
+		for (PendingRequest request : logged) {
+			log.acknowledge(request);
+		}
+		// only the active segment is left, and it goes with the log
+		assertEquals(1, log.getSegments());
+		log.close();
+		assertEquals(0, directory.listFiles().length);
+		assertEquals(0, new PendingRequestLog(directory, 1024).getRecovered().size());
+	}
+
+	@Test
+	public void tornRecordTest() throws IOException {
+		PendingRequestLog log = new PendingRequestLog(directory);
+		for (int i=0; i<10; i++) {
+			log.append(request(i));
+		}
+		log.close();
+		// corrupt the payload of the last record
+		File segment = directory.listFiles()[0];
+		RandomAccessFile raf = new RandomAccessFile(segment, "rw");
+		int position = 12;
+		for (int i=0; i<9; i++) {
+			raf.seek(position);
+			position += 8 + raf.readInt();
+		}
+		raf.seek(position + 20);
+		raf.write(0xff);
+		raf.close();
+
+		assertEquals(9, new PendingRequestLog(directory).getRecovered().size());
+	}
+
+	@Test
+	public void groupCommitTest() throws Exception {
+		final PendingRequestLog log = new PendingRequestLog(directory);
+		Thread[] writers = new Thread[8];
+		for (int t=0; t<writers.length; t++) {
+			writers[t] = new Thread() {
+				public void run() {
+					for (int i=0; i<200; i++) {
+						try {
+							log.append(request(i));
+						} catch (IOException e) {
+							throw new RuntimeException(e);
+						}
+					}
+				}
+			};
+			writers[t].start();
+		}
+		for (Thread writer : writers) {
+			writer.join();
+		}
+		assertEquals(1600, log.getAppended());
+		log.close();
+		assertEquals(1600, new PendingRequestLog(directory).getRecovered().size());
+	}
+
+}
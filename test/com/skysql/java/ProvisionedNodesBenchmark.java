@@ -0,0 +1,164 @@
+package com.skysql.java;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.InetSocketAddress;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Compares the refresh of the provisioned nodes, as <code>MonData.getProvisionedNodes</code>
+ * does it with one conditional request per cycle, with the former refresh: the node list,
+ * then one conditional request per node, and a JSON round trip to convert each node.
+ * The local stand-in for the API answers 304 when no node changed since the
+ * If-Modified-Since date. The first cycle fetches all the nodes, the others find no change.
+ * Run with: java com.skysql.java.ProvisionedNodesBenchmark [nodes] [cycles]
+ *
+ * @author agent
+ *
+ */
+public class ProvisionedNodesBenchmark {
+	private static final AtomicInteger	REQUESTS = new AtomicInteger();
+
+	public static void main(String[] args) throws Exception {
+		int nodes = args.length > 0 ? Integer.parseInt(args[0]) : 500;
+		int cycles = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+		System.setProperty("sun.net.httpserver.nodelay", "true");
+		final byte[] nodeList = nodeList(nodes);
+		final byte[] provisioned = provisionedNodes(nodes);
+		// the nodes last changed before the benchmark started
+		final long changed = System.currentTimeMillis() - 60000;
+		HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 128);
+		server.createContext("/", new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				REQUESTS.incrementAndGet();
+				InputStream in = exchange.getRequestBody();
+				while (in.read() >= 0) {
+					// consume the request
+				}
+				byte[] body = exchange.getRequestURI().getPath().endsWith("provisionednode") ? provisioned : nodeList;
+				String since = exchange.getRequestHeaders().getFirst("If-Modified-Since");
+				if (body == provisioned && since != null && modifiedSince(since) >= changed) {
+					exchange.sendResponseHeaders(304, -1);
+				} else {
+					exchange.sendResponseHeaders(200, body.length);
+					OutputStream out = exchange.getResponseBody();
+					out.write(body);
+				}
+				exchange.close();
+			}
+		});
+		server.setExecutor(Executors.newFixedThreadPool(4));
+		server.start();
+		System.setProperty("SKYSQL_API_HOST", "http://127.0.0.1:" + server.getAddress().getPort());
+		System.setProperty("SKYSQL_API_KEY", "1f8d9e040e65d7b105538b1ed0231770");
+		System.setProperty("SKYSQL_API_KEYID", "1");
+		try {
+			// warm up
+			run(false, 2, cycles);
+			run(true, 2, cycles);
+			run(false, 1, cycles);
+			run(true, 1, cycles);
+		} finally {
+			server.stop(0);
+			((ExecutorService) server.getExecutor()).shutdownNow();
+		}
+	}
+
+	private static void run(boolean perNode, int systemID, int cycles) {
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		MonData monData = new MonData(systemID);
+		MonAPI api = new MonAPI();
+		GsonLatestObservations cache = new GsonLatestObservations();
+		String name = perNode ? "per node" : "single request";
+		for (int cycle=0; cycle<cycles; cycle++) {
+			int requests = REQUESTS.get();
+			long cpu = threads.getCurrentThreadCpuTime();
+			long start = System.nanoTime();
+			boolean changed = perNode ? perNode(api, cache, systemID) : monData.getProvisionedNodes();
+			long elapsed = System.nanoTime() - start;
+			cpu = threads.getCurrentThreadCpuTime() - cpu;
+			if (cycle < 2 || cycle == cycles - 1) {
+				System.out.println(String.format("system %d %-15s cycle %3d: changed %-5s %4d requests %8.2f ms %8.2f ms CPU",
+						systemID, name, cycle, changed, REQUESTS.get() - requests, elapsed / 1e6, cpu / 1e6));
+			}
+		}
+	}
+
+	/**
+	 * The former refresh of <code>MonData.getProvisionedNodes</code>.
+	 */
+	private static boolean perNode(MonAPI api, GsonLatestObservations cache, int systemID) {
+		GsonNode gsonNodeList = api.getReturnedObject("system/" + systemID + "/node",
+				new String[] {"fields"}, new String[] {"nodeid"}, null, GsonNode.class);
+		if (gsonNodeList == null) return false;
+		Iterator<Integer> nodeIt = gsonNodeList.getNodeIdList().iterator();
+		boolean isChanged = true;
+		while (nodeIt.hasNext()) {
+			String now = cache.getNodeUpdateDate(systemID, nodeIt.next());
+			GsonProvisionedNode gsonProvisionedNode = api.getReturnedObject("provisionednode", null, null, now,
+					GsonProvisionedNode.class);
+			isChanged = gsonProvisionedNode != null && gsonProvisionedNode.getProvisionedNodes() != null
+					&& ! gsonProvisionedNode.getProvisionedNodes().isEmpty();
+			if (isChanged) {
+				List<GsonNode.Nodes> systemNodes = new ArrayList<GsonNode.Nodes>();
+				for (GsonProvisionedNode.ProvisionedNodes provisionedNode : gsonProvisionedNode.getProvisionedNodes()) {
+					String ser = "{ \"node\": " + GsonManager.toJson(provisionedNode) + "}";
+					GsonNode gsonNode = GsonManager.fromJson(ser, GsonNode.class);
+					if (gsonNode != null && gsonNode.getNode(0).getSystemId() == systemID) {
+						systemNodes.add(gsonNode.getNode(0));
+					}
+				}
+				cache.setAllNodes(systemID, systemNodes);
+				break;
+			}
+		}
+		return isChanged;
+	}
+
+	private static long modifiedSince(String date) {
+		try {
+			return new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss Z", Locale.ENGLISH).parse(date).getTime();
+		} catch (java.text.ParseException e) {
+			return 0;
+		}
+	}
+
+	private static byte[] nodeList(int count) {
+		StringBuilder json = new StringBuilder(count * 16).append("{\"nodes\":[");
+		for (int i=1; i<=count; i++) {
+			json.append(i > 1 ? "," : "").append("{\"nodeid\":\"").append(i).append("\"}");
+		}
+		return json.append("]}").toString().getBytes();
+	}
+
+	/**
+	 * The same nodes for each system: the system IDs of the benchmark are 1 and 2.
+	 */
+	private static byte[] provisionedNodes(int count) {
+		StringBuilder json = new StringBuilder(count * 400).append("{\"provisionednodes\":[");
+		for (int system=1; system<=2; system++) {
+			for (int i=1; i<=count; i++) {
+				json.append(system > 1 || i > 1 ? "," : "").append("{\"systemid\":\"").append(system)
+					.append("\",\"nodeid\":\"").append(i).append("\",\"name\":\"node").append(i)
+					.append("\",\"hostname\":\"db").append(i).append(".example.com\",\"privateip\":\"10.0.")
+					.append(i / 250).append('.').append(i % 250).append("\",\"dbusername\":\"admin\",")
+					.append("\"dbpassword\":\"secret\",\"systemtype\":\"galera\"}");
+			}
+		}
+		return json.append("]}").toString().getBytes();
+	}
+}
@@ -0,0 +1,114 @@
+package com.skysql.java;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Measures how fast the queued failed requests are replayed.
+ * The requests are queued while the API stand-in is down; the stand-in
+ * is then started, and the time to receive all of them is measured.
+ * The stand-in answers after a fixed latency, as a remote API would.
+ * Run with: java com.skysql.java.ReplayBenchmark [queued requests] [replay workers] [latency ms]
+ *
+ * @author agent
+ *
+ */
+public class ReplayBenchmark {
+
+	public static void main(String[] args) throws Exception {
+		final int requests = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+		int workers = args.length > 1 ? Integer.parseInt(args[1]) : 1;
+		final long latency = args.length > 2 ? Long.parseLong(args[2]) : 0;
+		System.setProperty("sun.net.httpserver.nodelay", "true");
+		ServerSocket probe = new ServerSocket(0);
+		int port = probe.getLocalPort();
+		probe.close();
+		System.setProperty("SKYSQL_API_HOST", "http://127.0.0.1:" + port);
+		System.setProperty("SKYSQL_API_KEY", "1f8d9e040e65d7b105538b1ed0231770");
+		System.setProperty("SKYSQL_API_KEYID", "1");
+
+		// in-memory queue cycle, without the network
+		RetryQueue<PendingRequest> queue = new RetryQueue<PendingRequest>(requests,
+				RetryQueue.OVERFLOW.DROP_NEWEST, PendingRequest.CODEC);
+		long start = System.nanoTime();
+		for (int i = 0; i < requests; i++) {
+			queue.offer(request(i));
+		}
+		while (queue.poll() != null) {
+			// drain
+		}
+		long elapsed = (System.nanoTime() - start) / 1000000;
+		System.out.println("queue offer/poll: " + requests + " requests in " + elapsed + " ms");
+
+		// end to end replay
+		MonAPI.setRetryQueue(requests, RetryQueue.OVERFLOW.DROP_NEWEST);
+		MonAPI.setRetryPolicy(requests, Integer.MAX_VALUE, 100, 100);
+		MonAPI.setRetryWorkers(workers);
+		MonAPI api = new MonAPI();
+		start = System.nanoTime();
+		for (int i = 0; i < requests; i++) {
+			PendingRequest request = request(i);
+			api.updateValue(request.getUri(), request.getNames(), request.getValues());
+		}
+		elapsed = (System.nanoTime() - start) / 1000000;
+		System.out.println("queued while down: " + MonAPI.getRetryQueue() + " in " + elapsed + " ms");
+
+		final CountDownLatch received = new CountDownLatch(requests);
+		HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", port), 128);
+		server.createContext("/", new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				InputStream in = exchange.getRequestBody();
+				while (in.read() >= 0) {
+					// consume the form data
+				}
+				if (latency > 0) {
+					try {
+						Thread.sleep(latency);
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+				}
+				byte[] body = "{\"updatecount\":1}".getBytes();
+				exchange.sendResponseHeaders(200, body.length);
+				exchange.getResponseBody().write(body);
+				exchange.close();
+				if ("PUT".equals(exchange.getRequestMethod())) received.countDown();
+			}
+		});
+		ExecutorService handlers = Executors.newFixedThreadPool(Math.max(workers, 4));
+		server.setExecutor(handlers);
+		server.start();
+		try {
+			// a live call ends the backoff at once
+			start = System.nanoTime();
+			api.getReturnedJson("system", null, null);
+			received.await();
+			elapsed = (System.nanoTime() - start) / 1000000;
+			System.out.println("replayed: " + requests + " requests by " + workers + " workers in " + elapsed + " ms, "
+					+ (requests * 1000L / Math.max(elapsed, 1)) + " req/s");
+			// the counters are updated when the attempt ends
+			RetryQueue<?> retryQueue = MonAPI.getRetryQueue();
+			while (retryQueue.getReplayed() < requests) {
+				Thread.sleep(10);
+			}
+			System.out.println(retryQueue);
+		} finally {
+			server.stop(0);
+			handlers.shutdown();
+		}
+	}
+
+	private static PendingRequest request(int i) {
+		return new PendingRequest(PendingRequest.METHOD.PUT, "system/1/node/" + i,
+				new String[] {"stateid"}, new String[] {Integer.toString(i)}, null);
+	}
+}
@@ -0,0 +1,174 @@
+package com.skysql.java;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+
+
+public class RetryQueueTest {
+	RetryQueue.Codec<Integer> codec = new RetryQueue.Codec<Integer>() {
+		public void write(DataOutput out, Integer element) throws IOException {
+			out.writeInt(element);
+		}
+		public Integer read(DataInput in) throws IOException {
+			return in.readInt();
+		}
+	};
+
+
+	@Test
+	public void dropOldestTest() {
+		RetryQueue<Integer> queue = new RetryQueue<Integer>(4, RetryQueue.OVERFLOW.DROP_OLDEST);
+		for (int i=0; i<6; i++) {
+			assertTrue(queue.offer(i));
+		}
+		assertEquals(2, queue.getDropped());
+		for (int i=2; i<6; i++) {
+			assertEquals(Integer.valueOf(i), queue.poll());
+		}
+		assertNull(queue.poll());
+	}
+
+	@Test
+	public void dropNewestTest() {
+		RetryQueue<Integer> queue = new RetryQueue<Integer>(4, RetryQueue.OVERFLOW.DROP_NEWEST);
+		for (int i=0; i<4; i++) {
+			assertTrue(queue.offer(i));
+		}
+		assertFalse(queue.offer(4));
+		assertEquals(1, queue.getDropped());
+		assertEquals(Integer.valueOf(0), queue.poll());
+	}
+
+	@Test
+	public void spillToDiskTest() {
+		RetryQueue<Integer> queue = new RetryQueue<Integer>(4, RetryQueue.OVERFLOW.SPILL_TO_DISK, codec);
+		for (int i=0; i<10; i++) {
+			assertTrue(queue.offer(i));
+		}
+		assertEquals(10, queue.size());
+		assertEquals(6, queue.getSpilled());
+		for (int i=0; i<10; i++) {
+			assertEquals(Integer.valueOf(i), queue.poll());
+		}
+		assertTrue(queue.isEmpty());
+		// back to memory once the file has been read
+		assertTrue(queue.offer(10));
+		assertEquals(6, queue.getSpilled());
+		assertEquals(Integer.valueOf(10), queue.poll());
+	}
+
+	@Test
+	public void droppedElementTest() {
+		RetryQueue.Codec<Integer> unwritable = new RetryQueue.Codec<Integer>() {
+			public void write(DataOutput out, Integer element) throws IOException {
+				throw new IOException("disk full");
+			}
+			public Integer read(DataInput in) throws IOException {
+				return in.readInt();
+			}
+		};
+		for (RetryQueue.OVERFLOW overflow : RetryQueue.OVERFLOW.values()) {
+			RetryQueue<Integer> queue = new RetryQueue<Integer>(2, overflow, unwritable);
+			final List<Integer> dropped = new ArrayList<Integer>();
+			queue.setDropListener(new RetryQueue.DropListener<Integer>() {
+				public void dropped(Integer element) {
+					dropped.add(element);
+				}
+			});
+			for (int i=0; i<3; i++) {
+				queue.offer(i);
+			}
+			// the request dropped is never returned, the others come out in order
+			boolean oldest = overflow == RetryQueue.OVERFLOW.DROP_OLDEST;
+			assertEquals(overflow.name(), Arrays.asList(oldest ? 0 : 2), dropped);
+			assertEquals(Integer.valueOf(oldest ? 1 : 0), queue.poll());
+			assertEquals(Integer.valueOf(oldest ? 2 : 1), queue.poll());
+			assertNull(queue.poll());
+			assertEquals(1, queue.getDropped());
+		}
+	}
+
+	@Test
+	public void unreadableSpillTest() {
+		// the stream fails once, at the second spilled request
+		RetryQueue.Codec<Integer> flaky = new RetryQueue.Codec<Integer>() {
+			private boolean failed = false;
+			public void write(DataOutput out, Integer element) throws IOException {
+				out.writeInt(element);
+			}
+			public Integer read(DataInput in) throws IOException {
+				int element = in.readInt();
+				if (element == 5 && ! failed) {
+					failed = true;
+					throw new IOException("unreadable");
+				}
+				return element;
+			}
+		};
+		RetryQueue<Integer> queue = new RetryQueue<Integer>(4, RetryQueue.OVERFLOW.SPILL_TO_DISK, flaky);
+		final List<Integer> dropped = new ArrayList<Integer>();
+		queue.setDropListener(new RetryQueue.DropListener<Integer>() {
+			public void dropped(Integer element) {
+				dropped.add(element);
+			}
+		});
+		for (int i=0; i<10; i++) {
+			assertTrue(queue.offer(i));
+		}
+		for (int i=0; i<5; i++) {
+			assertEquals(Integer.valueOf(i), queue.poll());
+		}
+		assertNull(queue.poll());
+		assertEquals(5, queue.getDropped());
+		assertEquals(Arrays.asList(5, 6, 7, 8, 9), dropped);
+		// back to memory
+		assertTrue(queue.offer(10));
+		assertEquals(Integer.valueOf(10), queue.poll());
+	}
+
+	@Test
+	public void concurrentProducersTest() throws InterruptedException {
+		final RetryQueue<Integer> queue = new RetryQueue<Integer>(1 << 16, RetryQueue.OVERFLOW.DROP_NEWEST);
+		Thread[] producers = new Thread[4];
+		for (int t=0; t<producers.length; t++) {
+			final int base = t * 10000;
+			producers[t] = new Thread() {
+				public void run() {
+					for (int i=0; i<10000; i++) {
+						queue.offer(base + i);
+					}
+				}
+			};
+			producers[t].start();
+		}
+		Set<Integer> seen = new HashSet<Integer>();
+		int[] last = new int[] {-1, -1, -1, -1};
+		while (seen.size() < 40000) {
+			Integer element = queue.poll();
+			if (element == null) continue;
+			assertTrue(seen.add(element));
+			// each producer's requests come out in order
+			assertTrue(element % 10000 > last[element / 10000]);
+			last[element / 10000] = element % 10000;
+		}
+		for (Thread producer : producers) {
+			producer.join();
+		}
+		assertNull(queue.poll());
+		assertEquals(0, queue.getDropped());
+	}
+
+}
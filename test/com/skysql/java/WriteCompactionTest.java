@@ -0,0 +1,189 @@
+package com.skysql.java;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import org.junit.Test;
+
+
+public class WriteCompactionTest {
+
+	private static PendingRequest put(String uri, String[] names, String[] values) {
+		return new PendingRequest(PendingRequest.METHOD.PUT, uri, names, values, null);
+	}
+
+	@Test
+	public void lastWriterWinsTest() {
+		WriteCompaction compaction = new WriteCompaction();
+		PendingRequest first = put("system/1/node/2", new String[] {"stateid"}, new String[] {"1"});
+		PendingRequest second = put("system/1/node/2", new String[] {"stateid"}, new String[] {"2"});
+		PendingRequest other = put("system/1/node/3", new String[] {"stateid"}, new String[] {"3"});
+		compaction.queued(first);
+		compaction.queued(second);
+		compaction.queued(other);
+		assertNull(compaction.compact(first));
+		compaction.done(first);
+		assertSame(second, compaction.compact(second));
+		compaction.done(second);
+		assertSame(other, compaction.compact(other));
+		assertEquals(1, compaction.getCompacted());
+	}
+
+	@Test
+	public void codecTest() throws IOException {
+		WriteCompaction compaction = new WriteCompaction();
+		PendingRequest queued = put("system/1/node/2", new String[] {"stateid"}, new String[] {"1"});
+		compaction.queued(queued);
+		// as spilled to disk or recovered from the log
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		PendingRequest.CODEC.write(new DataOutputStream(bytes), queued);
+		PendingRequest copy = PendingRequest.CODEC.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+		assertEquals(queued.getId(), copy.getId());
+		assertSame(copy, compaction.compact(copy));
+		compaction.done(copy);
+		// the field has no queued writer left: a new one is current
+		PendingRequest newer = put("system/1/node/2", new String[] {"stateid"}, new String[] {"2"});
+		assertTrue(newer.getId() > copy.getId());
+		compaction.queued(newer);
+		assertNull(compaction.compact(copy));
+		assertSame(newer, compaction.compact(newer));
+		assertEquals(1, compaction.getCompacted());
+	}
+
+	@Test
+	public void dropNewestTest() {
+		WriteCompaction compaction = new WriteCompaction();
+		RetryQueue<PendingRequest> queue = queue(compaction, 2, RetryQueue.OVERFLOW.DROP_NEWEST, PendingRequest.CODEC);
+		PendingRequest joined = put("system/1/node/1", new String[] {"state"}, new String[] {"joined"});
+		PendingRequest other = put("system/1/node/2", new String[] {"state"}, new String[] {"joined"});
+		PendingRequest down = put("system/1/node/1", new String[] {"state"}, new String[] {"down"});
+		assertTrue(push(compaction, queue, joined));
+		assertTrue(push(compaction, queue, other));
+		assertFalse(push(compaction, queue, down));
+		// the dropped request did not replace the queued one
+		PendingRequest replayed = queue.poll();
+		assertSame(joined, replayed);
+		assertSame(joined, compaction.compact(replayed));
+		compaction.done(replayed);
+		assertSame(other, compaction.compact(queue.poll()));
+		assertEquals(0, compaction.getCompacted());
+	}
+
+	@Test
+	public void failedSpillTest() {
+		RetryQueue.Codec<PendingRequest> unwritable = new RetryQueue.Codec<PendingRequest>() {
+			public void write(DataOutput out, PendingRequest element) throws IOException {
+				throw new IOException("disk full");
+			}
+			public PendingRequest read(DataInput in) throws IOException {
+				return PendingRequest.CODEC.read(in);
+			}
+		};
+		WriteCompaction compaction = new WriteCompaction();
+		RetryQueue<PendingRequest> queue = queue(compaction, 2, RetryQueue.OVERFLOW.SPILL_TO_DISK, unwritable);
+		PendingRequest first = put("system/1/node/1", new String[] {"state"}, new String[] {"joined"});
+		PendingRequest second = put("system/1/node/1", new String[] {"state"}, new String[] {"down"});
+		PendingRequest third = put("system/1/node/1", new String[] {"state"}, new String[] {"stopped"});
+		assertTrue(push(compaction, queue, first));
+		assertTrue(push(compaction, queue, second));
+		assertFalse(push(compaction, queue, third));
+		// the newest queued value is sent, the older one is superseded by it
+		assertNull(compaction.compact(queue.poll()));
+		compaction.done(first);
+		assertSame(second, compaction.compact(queue.poll()));
+		assertEquals(1, compaction.getCompacted());
+	}
+
+	@Test
+	public void dropOldestTest() {
+		WriteCompaction compaction = new WriteCompaction();
+		RetryQueue<PendingRequest> queue = queue(compaction, 2, RetryQueue.OVERFLOW.DROP_OLDEST, PendingRequest.CODEC);
+		PendingRequest first = put("system/1/node/1", new String[] {"state"}, new String[] {"joined"});
+		PendingRequest second = put("system/1/node/1", new String[] {"state"}, new String[] {"down"});
+		PendingRequest other = put("system/1/node/2", new String[] {"state"}, new String[] {"joined"});
+		assertTrue(push(compaction, queue, first));
+		assertTrue(push(compaction, queue, second));
+		assertTrue(push(compaction, queue, other));
+		assertSame(second, compaction.compact(queue.poll()));
+		compaction.done(second);
+		assertSame(other, compaction.compact(queue.poll()));
+		// the dropped request is not restored by a later drop of the same field
+		PendingRequest last = put("system/1/node/1", new String[] {"state"}, new String[] {"stopped"});
+		compaction.queued(last);
+		compaction.dropped(last);
+		assertNull(compaction.compact(first));
+	}
+
+	/**
+	 * A queue that tells the compaction about the dropped requests, as <code>MonAPI</code> does.
+	 */
+	private static RetryQueue<PendingRequest> queue(final WriteCompaction compaction, int capacity,
+			RetryQueue.OVERFLOW overflow, RetryQueue.Codec<PendingRequest> codec) {
+		RetryQueue<PendingRequest> queue = new RetryQueue<PendingRequest>(capacity, overflow, codec);
+		queue.setDropListener(new RetryQueue.DropListener<PendingRequest>() {
+			public void dropped(PendingRequest request) {
+				compaction.dropped(request);
+			}
+		});
+		return queue;
+	}
+	private static boolean push(WriteCompaction compaction, RetryQueue<PendingRequest> queue,
+			PendingRequest request) {
+		compaction.queued(request);
+		return queue.offer(request);
+	}
+
+	@Test
+	public void fieldsTest() {
+		WriteCompaction compaction = new WriteCompaction();
+		PendingRequest both = put("system/1", new String[] {"state", "name"}, new String[] {"running", "db"});
+		PendingRequest state = put("system/1", new String[] {"state"}, new String[] {"down"});
+		compaction.queued(both);
+		compaction.queued(state);
+		PendingRequest left = compaction.compact(both);
+		assertArrayEquals(new String[] {"name"}, left.getNames());
+		assertArrayEquals(new String[] {"db"}, left.getValues());
+		assertEquals(1, compaction.getCompactedFields());
+	}
+
+	@Test
+	public void postTest() {
+		WriteCompaction compaction = new WriteCompaction();
+		PendingRequest first = new PendingRequest(PendingRequest.METHOD.POST, "monitordata",
+				new String[] {"systemid"}, new String[] {"1"}, null);
+		PendingRequest second = new PendingRequest(PendingRequest.METHOD.POST, "monitordata",
+				new String[] {"systemid"}, new String[] {"1"}, null);
+		compaction.queued(first);
+		compaction.queued(second);
+		assertSame(first, compaction.compact(first));
+		assertSame(second, compaction.compact(second));
+	}
+
+	@Test
+	public void writtenTest() {
+		WriteCompaction compaction = new WriteCompaction();
+		PendingRequest queued = put("system/1/node/2", new String[] {"stateid"}, new String[] {"1"});
+		compaction.queued(queued);
+		long started = compaction.now();
+		// queued while the live request was running: newer, kept
+		PendingRequest newer = put("system/1/node/3", new String[] {"stateid"}, new String[] {"2"});
+		compaction.queued(newer);
+		compaction.written("system/1/node/2", new String[] {"stateid"}, started);
+		compaction.written("system/1/node/3", new String[] {"stateid"}, started);
+		assertNull(compaction.compact(queued));
+		assertSame(newer, compaction.compact(newer));
+	}
+
+}